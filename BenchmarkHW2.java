@@ -0,0 +1,25 @@
+package HomeWork2;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+public class BenchmarkHW2 {
+
+	/**
+	 * Runs the benchmarks with the GC profiler, which reports the allocation rate of every benchmark.
+	 * The first argument, if given, is a regular expression that selects the benchmarks to run.
+	 *
+	 * @param args an optional benchmark name pattern
+	 * @throws RunnerException if a benchmark fails
+	 */
+	public static void main(String[] args) throws RunnerException {
+		String pattern = args.length > 0 ? args[0] : "HomeWork2\\..*Benchmark";
+
+		new Runner(new OptionsBuilder()
+				.include(pattern)
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+}
@@ -0,0 +1,206 @@
+package HomeWork2;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The critical values of the chi-square test of a single p-value, for any degree of freedom.
+ * A critical value is the quantile of the chi-square distribution that has the p-value above it,
+ * computed numerically from the regularized incomplete gamma function the first time it is needed,
+ * and then read from a primitive array indexed by the degree of freedom.
+ * The p-values of the p-value indexes keep the rounded values of the original table up to 13 degrees of
+ * freedom, so the trees built with them are the trees of the original table.
+ * There is a single instance for every p-value, shared by all the trees (and the threads) that prune
+ * with it, so a sweep over trees and p-values computes every critical value once.
+ */
+final class ChiSquareCriticalValues {
+	// the p-values of the p-value indexes
+	static final double[] P_VALUES = {1, 0.75, 0.5, 0.25, 0.05, 0.005};
+	// the critical values of the p-values of the p-value indexes for degrees of freedom 1 to 13, rounded to three
+	// decimals, the critical value of degree of freedom df and p-value index i is at TABLE[df - 1][i]
+	// (they are kept as they were, so the trees pruned with these p-values don't change)
+	private static final double[][] TABLE = {
+			{0, 0.102, 0.455, 1.323, 3.841, 7.879},
+			{0, 0.575, 1.386, 2.773, 5.991, 10.597},
+			{0, 1.213, 2.366, 4.108, 7.815, 12.838},
+			{0, 1.923, 3.357, 5.385, 9.488, 14.860},
+			{0, 2.675, 4.351, 6.626, 11.070, 16.750},
+			{0, 3.455, 5.348, 7.841, 12.592, 18.548},
+			{0, 4.255, 6.346, 9.037, 14.067, 20.278},
+			{0, 5.071, 7.344, 10.219, 15.507, 21.955},
+			{0, 5.899, 8.343, 11.389, 16.919, 23.589},
+			{0, 6.737, 9.342, 12.549, 18.307, 25.188},
+			{0, 7.584, 10.341, 13.701, 19.675, 26.757},
+			{0, 8.438, 11.340, 14.845, 21.026, 28.300},
+			{0, 9.299, 12.340, 15.984, 22.362, 29.819}
+	};
+
+	// the relative precision of a computed critical value
+	private static final double PRECISION = 1e-12;
+	// the largest number of iterations of the incomplete gamma function
+	private static final int MAX_ITERATIONS = 100000;
+	// the coefficients of the Lanczos approximation of the gamma function (g = 7)
+	private static final double[] LANCZOS = {0.99999999999980993, 676.5203681218851, -1259.1392167224028,
+			771.32342877765313, -176.61502916214059, 12.507343278686905, -0.13857109526572012,
+			9.9843695780195716e-6, 1.5056327351493116e-7};
+
+	// the instance of every p-value
+	private static final ConcurrentHashMap<Double, ChiSquareCriticalValues> INSTANCES =
+			new ConcurrentHashMap<Double, ChiSquareCriticalValues>();
+
+	final double pValue;
+	// the critical value of degree of freedom df at values[df] (NaN if it wasn't computed yet)
+	// the array is replaced by a larger copy when a new value is computed, so it is read without locking
+	private volatile double[] values = new double[0];
+
+	private ChiSquareCriticalValues(double pValue) {
+		this.pValue = pValue;
+		// a p-value of the table starts with the values of the table, the larger degrees of freedom are computed
+		for (int i = 0; i < P_VALUES.length; i++) {
+			if (P_VALUES[i] == pValue) {
+				double[] tableValues = new double[TABLE.length + 1];
+				tableValues[0] = Double.NaN;
+				for (int df = 1; df <= TABLE.length; df++) {
+					tableValues[df] = TABLE[df - 1][i];
+				}
+				values = tableValues;
+			}
+		}
+	}
+
+	/**
+	 * @param pValue a p-value in (0, 1]
+	 * @return the shared critical values of the p-value
+	 */
+	static ChiSquareCriticalValues of(double pValue) {
+		if (!(pValue > 0 && pValue <= 1)) {
+			throw new IllegalArgumentException("The p-value " + pValue + " is not in (0, 1]");
+		}
+		return INSTANCES.computeIfAbsent(pValue, ChiSquareCriticalValues::new);
+	}
+
+	/**
+	 * @param degreeOfFreedom the degree of freedom of the test
+	 * @param pValue a p-value in (0, 1]
+	 * @return the chi-square value that a split with the given degree of freedom must reach to not be pruned
+	 */
+	static double criticalValue(int degreeOfFreedom, double pValue) {
+		return of(pValue).criticalValue(degreeOfFreedom);
+	}
+
+	/**
+	 * @param degreeOfFreedom the degree of freedom of the test
+	 * @return the chi-square value that a split with the given degree of freedom must reach to not be pruned
+	 * (0 for a p-value of 1 or a degree of freedom below 1, where nothing is pruned)
+	 */
+	double criticalValue(int degreeOfFreedom) {
+		if (pValue == 1 || degreeOfFreedom < 1) {
+			return 0;
+		}
+		double[] currentValues = values;
+		if (degreeOfFreedom < currentValues.length && !Double.isNaN(currentValues[degreeOfFreedom])) {
+			return currentValues[degreeOfFreedom];
+		}
+		return computeValue(degreeOfFreedom);
+	}
+
+	// computes the critical value of the degree of freedom, and publishes it in a copy of the values
+	private synchronized double computeValue(int degreeOfFreedom) {
+		double[] currentValues = values;
+		if (degreeOfFreedom < currentValues.length && !Double.isNaN(currentValues[degreeOfFreedom])) {
+			return currentValues[degreeOfFreedom];
+		}
+		double[] newValues = Arrays.copyOf(currentValues, Math.max(currentValues.length, degreeOfFreedom + 1));
+		Arrays.fill(newValues, currentValues.length, newValues.length, Double.NaN);
+		newValues[degreeOfFreedom] = quantile(degreeOfFreedom, pValue);
+		values = newValues;
+		return newValues[degreeOfFreedom];
+	}
+
+	// returns the value x with probability p above it in the chi-square distribution of the given degree of freedom
+	static double quantile(int degreeOfFreedom, double p) {
+		// brackets the quantile, starting from the mean of the distribution (the upper tail decreases with x)
+		double low = 0;
+		double high = degreeOfFreedom;
+		while (upperTail(degreeOfFreedom, high) > p) {
+			low = high;
+			high *= 2;
+		}
+		// bisection
+		while (high - low > PRECISION * high) {
+			double middle = (low + high) / 2;
+			if (upperTail(degreeOfFreedom, middle) > p) {
+				low = middle;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return (low + high) / 2;
+	}
+
+	// returns the probability above x in the chi-square distribution of the given degree of freedom
+	static double upperTail(int degreeOfFreedom, double x) {
+		if (x <= 0) {
+			return 1;
+		}
+		double a = degreeOfFreedom / 2.0;
+		double z = x / 2;
+		// the series converges fast below a + 1, and the continued fraction above it
+		return z < a + 1 ? 1 - lowerGammaSeries(a, z) : upperGammaFraction(a, z);
+	}
+
+	// returns the regularized lower incomplete gamma function P(a, z) by its series
+	private static double lowerGammaSeries(double a, double z) {
+		double term = 1 / a;
+		double sum = term;
+		for (int n = 1; n < MAX_ITERATIONS && Math.abs(term) > Math.abs(sum) * 1e-16; n++) {
+			term *= z / (a + n);
+			sum += term;
+		}
+		return sum * Math.exp(-z + a * Math.log(z) - logGamma(a));
+	}
+
+	// returns the regularized upper incomplete gamma function Q(a, z) by its continued fraction (modified Lentz)
+	private static double upperGammaFraction(double a, double z) {
+		double tiny = 1e-300;
+		double b = z + 1 - a;
+		double c = 1 / tiny;
+		double d = 1 / b;
+		double fraction = d;
+		for (int n = 1; n < MAX_ITERATIONS; n++) {
+			double an = -n * (n - a);
+			b += 2;
+			d = an * d + b;
+			if (Math.abs(d) < tiny) {
+				d = tiny;
+			}
+			c = b + an / c;
+			if (Math.abs(c) < tiny) {
+				c = tiny;
+			}
+			d = 1 / d;
+			double delta = d * c;
+			fraction *= delta;
+			if (Math.abs(delta - 1) < 1e-15) {
+				break;
+			}
+		}
+		return Math.exp(-z + a * Math.log(z) - logGamma(a)) * fraction;
+	}
+
+	// returns the log of the gamma function of a positive value (Lanczos approximation)
+	private static double logGamma(double a) {
+		if (a < 0.5) {
+			// the reflection formula
+			return Math.log(Math.PI / Math.abs(Math.sin(Math.PI * a))) - logGamma(1 - a);
+		}
+		double x = a - 1;
+		double sum = LANCZOS[0];
+		for (int i = 1; i < LANCZOS.length; i++) {
+			sum += LANCZOS[i] / (x + i);
+		}
+		double t = x + 7.5;
+		return 0.5 * Math.log(2 * Math.PI) + (x + 0.5) * Math.log(t) - t + Math.log(sum);
+	}
+}
@@ -0,0 +1,416 @@
+package HomeWork2;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * An immutable, flat copy of a trained decision tree for scoring.
+ * The nodes are numbered in BFS order (the root is node 0) and stored as parallel arrays,
+ * so classifying an instance follows array indexes instead of node references and allocates nothing.
+ * Instances are scored by the value indexes of their nominal attributes and by the values
+ * (or the bins) of their numeric attributes.
+ */
+public final class CompiledTree implements ScoringTree {
+	// marks a leaf in the attribute array, and a missing child in the children array
+	static final int NONE = -1;
+	// the number of rows that are routed through the tree together in a batch
+	static final int BLOCK_SIZE = 1024;
+
+	// the split attribute of every node (NONE for a leaf)
+	final int[] attribute;
+	// the children of node n with value v is at children[childOffset[n] + v] (NONE if there is no such child)
+	// a node that splits a numeric attribute has two children: the values up to its threshold, and the values above it
+	final int[] childOffset;
+	final int[] children;
+	// the threshold of every node that splits a numeric attribute (NaN for the other nodes), and the bin of the threshold
+	final double[] threshold;
+	final int[] thresholdBin;
+	// the bin edges of every numeric attribute of the training data (null for a nominal attribute)
+	final double[][] binEdges;
+	// the number of values of every attribute of the training data (the number of bins of a numeric attribute)
+	final int[] numValues;
+	// the return value of every node (the classification of a leaf, and the majority classification of an inner node)
+	final double[] leafValue;
+	// the depth of every node (the root depth is 0)
+	final int[] depth;
+	// the fraction of the training instances of node n in class c is at distribution[n * numClasses + c]
+	final int numClasses;
+	final double[] distribution;
+	// the prediction of every node, shared by all the instances that the node classifies
+	private final Prediction[] predictions;
+	// the attributes that the tree splits by, in increasing order
+	private final int[] usedAttributes;
+
+	private CompiledTree(int[] attribute, int[] childOffset, int[] children, double[] threshold, int[] thresholdBin,
+						 double[][] binEdges, int[] numValues, double[] leafValue, int[] depth, int numClasses, double[] distribution) {
+		this.attribute = attribute;
+		this.childOffset = childOffset;
+		this.children = children;
+		this.threshold = threshold;
+		this.thresholdBin = thresholdBin;
+		this.binEdges = binEdges;
+		this.numValues = numValues;
+		this.leafValue = leafValue;
+		this.depth = depth;
+		this.numClasses = numClasses;
+		this.distribution = distribution;
+		this.predictions = new Prediction[attribute.length];
+		for (int n = 0; n < predictions.length; n++) {
+			predictions[n] = new Prediction(leafValue[n], depth[n]);
+		}
+		this.usedAttributes = IntStream.of(attribute).filter(a -> a != NONE).distinct().sorted().toArray();
+	}
+
+	/**
+	 * Compiles the tree under the given root.
+	 *
+	 * @param root the root of a built tree
+	 * @param binEdges the bin edges of every numeric attribute of the training data (null for a nominal attribute)
+	 * @param numValues the number of values of every attribute of the training data
+	 * @param numClasses the number of classes
+	 * @return the compiled tree
+	 */
+	static CompiledTree compile(Node root, double[][] binEdges, int[] numValues, int numClasses) {
+		// numbers the nodes in BFS order
+		List<Node> nodes = bfsOrder(root);
+		int numOfChildSlots = 0;
+		for (Node currentNode : nodes) {
+			if (currentNode.children != null) {
+				numOfChildSlots += currentNode.children.length;
+			}
+		}
+
+		int numOfNodes = nodes.size();
+		int[] attribute = new int[numOfNodes];
+		int[] childOffset = new int[numOfNodes];
+		int[] children = new int[numOfChildSlots];
+		double[] threshold = new double[numOfNodes];
+		int[] thresholdBin = new int[numOfNodes];
+		double[] leafValue = new double[numOfNodes];
+		int[] depth = new int[numOfNodes];
+		double[] distribution = new double[numOfNodes * numClasses];
+		// the number of the next node to be referenced as a child, and the next free child slot
+		int nextChild = 1;
+		int nextSlot = 0;
+
+		for (int n = 0; n < numOfNodes; n++) {
+			Node currentNode = nodes.get(n);
+			leafValue[n] = currentNode.returnValue;
+			threshold[n] = currentNode.threshold;
+			thresholdBin[n] = currentNode.thresholdBin;
+			// a node that wasn't decided yet (while the tree is streamed) has no distribution
+			double numOfInstances = 0;
+			for (int c = 0; currentNode.classCounts != null && c < numClasses; c++) {
+				numOfInstances += currentNode.classCounts[c];
+			}
+			for (int c = 0; numOfInstances != 0 && c < numClasses; c++) {
+				distribution[n * numClasses + c] = currentNode.classCounts[c] / numOfInstances;
+			}
+			if (currentNode.children == null) {
+				attribute[n] = NONE;
+				childOffset[n] = NONE;
+				continue;
+			}
+			attribute[n] = currentNode.attributeIndex;
+			childOffset[n] = nextSlot;
+			// the children were numbered in this order while numbering the nodes
+			for (Node child : currentNode.children) {
+				if (child == null) {
+					children[nextSlot++] = NONE;
+				}
+				else {
+					depth[nextChild] = depth[n] + 1;
+					children[nextSlot++] = nextChild++;
+				}
+			}
+		}
+
+		return new CompiledTree(attribute, childOffset, children, threshold, thresholdBin, binEdges, numValues, leafValue, depth,
+				numClasses, distribution);
+	}
+
+	/**
+	 * @param root the root of a tree
+	 * @return the nodes of the tree in BFS order, the index of a node is its number in the compiled tree
+	 */
+	static List<Node> bfsOrder(Node root) {
+		List<Node> nodes = new ArrayList<Node>();
+		nodes.add(root);
+		for (int n = 0; n < nodes.size(); n++) {
+			Node currentNode = nodes.get(n);
+			if (currentNode.children != null) {
+				for (Node child : currentNode.children) {
+					if (child != null) {
+						nodes.add(child);
+					}
+				}
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return the attributes that the tree splits by, in increasing order
+	 */
+	public int[] usedAttributes() {
+		return usedAttributes.clone();
+	}
+
+	@Override
+	public int numNodes() {
+		return attribute.length;
+	}
+
+	@Override
+	public int classifyingNode(double[] values) {
+		int node = 0;
+		int child;
+		double value;
+
+		while (attribute[node] != NONE) {
+			value = values[attribute[node]];
+			// a missing value, and a nominal value that isn't a value index,
+			// are classified like a value that wasn't in the training data
+			if (Double.isNaN(value) || Double.isNaN(threshold[node]) && valueIndex(attribute[node], value) == NONE) {
+				return node;
+			}
+			child = children[childOffset[node] + childIndex(node, value)];
+			if (child == NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	@Override
+	public int classifyingNode(int[] valueIndexes) {
+		int node = 0;
+		int child;
+		int value;
+
+		while (attribute[node] != NONE) {
+			value = valueIndexes[attribute[node]];
+			if (value < 0) {
+				return node;
+			}
+			child = children[childOffset[node] + childIndex(node, value)];
+			if (child == NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	@Override
+	public int classifyingNode(Instance instance) {
+		int node = 0;
+		int child;
+
+		while (attribute[node] != NONE) {
+			if (instance.isMissing(attribute[node])) {
+				return node;
+			}
+			child = children[childOffset[node] + childIndex(node, instance.value(attribute[node]))];
+			if (child == NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	// returns the child index of a value: the value index of a nominal value,
+	// and 0 or 1 for a numeric value up to or above the threshold
+	private int childIndex(int node, double value) {
+		if (Double.isNaN(threshold[node])) {
+			return (int) value;
+		}
+		return value <= threshold[node] ? 0 : 1;
+	}
+
+	// returns the child index of a value index (the bin of a numeric value)
+	private int childIndex(int node, int valueIndex) {
+		if (Double.isNaN(threshold[node])) {
+			return valueIndex;
+		}
+		return valueIndex <= thresholdBin[node] ? 0 : 1;
+	}
+
+	@Override
+	public int valueIndex(int attributeIndex, double value) {
+		if (binEdges[attributeIndex] == null) {
+			return value >= 0 && value < numValues[attributeIndex] && value == (int) value ? (int) value : NONE;
+		}
+		return EncodedInstances.bin(binEdges[attributeIndex], value);
+	}
+
+	/**
+	 * Finds the classifying nodes of a block of rows given as columns of value indexes.
+	 * The rows move down the tree together one level at a time, so every level reads
+	 * a small part of the tree arrays for all the rows.
+	 *
+	 * @param columns the value indexes of every attribute, columns[attribute][row] (negative for a missing value)
+	 *                (see {@link #valueIndex(int, double)})
+	 * @param from the first row to classify
+	 * @param to the row after the last row to classify
+	 * @param nodes gets the classifying node of row from + i at nodes[i]
+	 */
+	@Override
+	public void classifyingNodes(int[][] columns, int from, int to, int[] nodes) {
+		int numOfRows = to - from;
+		// the rows (relative to from) that didn't reach their classifying node yet
+		int[] active = new int[numOfRows];
+		int numOfActive = numOfRows;
+		int row;
+		int node;
+		int value;
+		int child;
+
+		for (int i = 0; i < numOfRows; i++) {
+			nodes[i] = 0;
+			active[i] = i;
+		}
+
+		while (numOfActive > 0) {
+			int stillActive = 0;
+			// moves every active row one level down
+			for (int i = 0; i < numOfActive; i++) {
+				row = active[i];
+				node = nodes[row];
+				if (attribute[node] == NONE) {
+					continue;
+				}
+				value = columns[attribute[node]][from + row];
+				if (value < 0) {
+					continue;
+				}
+				child = children[childOffset[node] + childIndex(node, value)];
+				if (child == NONE) {
+					continue;
+				}
+				nodes[row] = child;
+				active[stillActive++] = row;
+			}
+			numOfActive = stillActive;
+		}
+	}
+
+	/**
+	 * Finds the classifying node of every instance in the given set, one block of rows at a time.
+	 *
+	 * @param instances instances with the attributes of the training data
+	 * @param nodes gets the classifying node of instance i at nodes[i]
+	 * @param parallel true to classify the blocks in parallel
+	 */
+	public void classifyingNodes(Instances instances, int[] nodes, boolean parallel) {
+		int numOfBlocks = (instances.numInstances() + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		IntStream blocks = IntStream.range(0, numOfBlocks);
+		if (parallel) {
+			blocks = blocks.parallel();
+		}
+		blocks.forEach(block -> classifyBlock(instances, block * BLOCK_SIZE,
+				Math.min(instances.numInstances(), (block + 1) * BLOCK_SIZE), nodes));
+	}
+
+	// copies the values of the used attributes of instances [from, to) to columns, and routes them through the tree
+	private void classifyBlock(Instances instances, int from, int to, int[] nodes) {
+		int[][] columns = new int[instances.numAttributes()][];
+		Instance currentInstance;
+
+		for (int a : usedAttributes) {
+			columns[a] = new int[to - from];
+		}
+		for (int i = from; i < to; i++) {
+			currentInstance = instances.instance(i);
+			for (int a : usedAttributes) {
+				columns[a][i - from] = currentInstance.isMissing(a) ? NONE : valueIndex(a, currentInstance.value(a));
+			}
+		}
+
+		int[] blockNodes = new int[to - from];
+		classifyingNodes(columns, 0, to - from, blockNodes);
+		System.arraycopy(blockNodes, 0, nodes, from, to - from);
+	}
+
+	/**
+	 * Classifies a block of rows given as columns of value indexes.
+	 *
+	 * @param columns the value indexes of every attribute, columns[attribute][row] (negative for a missing value)
+	 * @param from the first row to classify
+	 * @param to the row after the last row to classify
+	 * @param predictions gets the classification of row i at predictions[i]
+	 * @return the number of rows that were classified by an inner node (a missing value, or a value
+	 *         that wasn't in the training data)
+	 */
+	public int classifyBatch(int[][] columns, int from, int to, double[] predictions) {
+		int[] nodes = new int[Math.min(BLOCK_SIZE, to - from)];
+		int numOfInnerNodeRows = 0;
+		// routes the rows in blocks, so the routing state stays small
+		for (int blockFrom = from; blockFrom < to; blockFrom += BLOCK_SIZE) {
+			int blockTo = Math.min(to, blockFrom + BLOCK_SIZE);
+			classifyingNodes(columns, blockFrom, blockTo, nodes);
+			for (int i = blockFrom; i < blockTo; i++) {
+				predictions[i] = leafValue[nodes[i - blockFrom]];
+				if (attribute[nodes[i - blockFrom]] != NONE) {
+					numOfInnerNodeRows++;
+				}
+			}
+		}
+		return numOfInnerNodeRows;
+	}
+
+	/**
+	 * @param values the value of every attribute, nominal values as value indexes and numeric values as they are
+	 * @return the classification of the given values
+	 */
+	public double classify(double[] values) {
+		return leafValue[classifyingNode(values)];
+	}
+
+	/**
+	 * @param valueIndexes the value index of every attribute
+	 * @return the classification of the given value indexes
+	 */
+	public double classify(int[] valueIndexes) {
+		return leafValue[classifyingNode(valueIndexes)];
+	}
+
+	@Override
+	public double value(int node) {
+		return leafValue[node];
+	}
+
+	@Override
+	public void distribution(int node, double[] distribution) {
+		System.arraycopy(this.distribution, node * numClasses, distribution, 0, numClasses);
+	}
+
+	@Override
+	public int numAttributes() {
+		return binEdges.length;
+	}
+
+	@Override
+	public int numClasses() {
+		return numClasses;
+	}
+
+	/**
+	 * @param node the number of a node
+	 * @return the prediction of the node
+	 */
+	public Prediction prediction(int node) {
+		return predictions[node];
+	}
+
+	@Override
+	public int depth(int node) {
+		return depth[node];
+	}
+}
@@ -0,0 +1,240 @@
+package HomeWork2;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The cost-complexity (weakest link) pruning path of a built tree. The cost of a subtree for a complexity
+ * parameter alpha is its training error plus alpha times its number of leaves, and as alpha grows the subtree
+ * with the lowest cost loses the inner node whose split removes the least error per leaf it adds.
+ * The errors come from the class weights that every node kept while building, so the path doesn't touch the
+ * training data: the errors and the numbers of leaves of all the subtrees are summed in one bottom-up pass,
+ * and the weakest links are then collapsed in order from a priority queue, where a collapse updates only
+ * the ancestors of the collapsed node.
+ * The result is the alpha from which every node isn't an inner node any more, so the subtree of any alpha,
+ * and the classifying node of a row in every subtree of the path, are read from the full tree.
+ * A collapsed node classifies by its return value, like it did as an inner node.
+ * A subtree with a single leaf that has less training error than its root as a leaf is never cheaper as a leaf,
+ * so it collapses only with an ancestor, and if the whole tree is such a subtree the path ends with it
+ * instead of the root as a leaf.
+ */
+final class CostComplexityPruning {
+	// the nodes of the tree in BFS order, the index of a node is its number in the compiled tree
+	final List<Node> nodes;
+	// the number of the parent of every node (-1 for the root)
+	final int[] parent;
+	// the children of node n are the nodes [firstChild[n], firstChild[n] + numOfChildren[n])
+	private final int[] firstChild;
+	private final int[] numOfChildren;
+	// node n is an inner node of the subtree of alpha if alpha < innerUntil[n] (-infinity for a leaf of the full tree)
+	final double[] innerUntil;
+	// the alphas where the subtree changes, in increasing order, starting at 0 (the full tree, up to splits without gain)
+	final double[] alphas;
+
+	// a candidate collapse, valid while the version of its node didn't change
+	private static final class Collapse implements Comparable<Collapse> {
+		final double gain;
+		final int node;
+		final int version;
+
+		Collapse(double gain, int node, int version) {
+			this.gain = gain;
+			this.node = node;
+			this.version = version;
+		}
+
+		@Override
+		public int compareTo(Collapse other) {
+			// the deeper node first on a tie, so the order doesn't depend on the queue
+			int order = Double.compare(gain, other.gain);
+			return order != 0 ? order : Integer.compare(other.node, node);
+		}
+	}
+
+	/**
+	 * Computes the pruning path of the tree under the given root.
+	 *
+	 * @param root the root of a built tree
+	 */
+	CostComplexityPruning(Node root) {
+		nodes = CompiledTree.bfsOrder(root);
+		int numOfNodes = nodes.size();
+		parent = new int[numOfNodes];
+		firstChild = new int[numOfNodes];
+		numOfChildren = new int[numOfNodes];
+		parent[0] = -1;
+		// the children are numbered in the order of the BFS, like in the compiled tree
+		for (int n = 0, nextChild = 1; n < numOfNodes; n++) {
+			Node currentNode = nodes.get(n);
+			firstChild[n] = nextChild;
+			if (currentNode.children != null) {
+				for (Node child : currentNode.children) {
+					if (child != null) {
+						parent[nextChild++] = n;
+					}
+				}
+			}
+			numOfChildren[n] = nextChild - firstChild[n];
+		}
+
+		// the training error of every node as a leaf, and the training error and the leaves of its subtree
+		double[] leafError = new double[numOfNodes];
+		double[] subtreeError = new double[numOfNodes];
+		int[] numOfLeaves = new int[numOfNodes];
+		for (int n = 0; n < numOfNodes; n++) {
+			leafError[n] = leafError(nodes.get(n));
+		}
+		for (int n = numOfNodes - 1; n >= 0; n--) {
+			if (nodes.get(n).children == null) {
+				subtreeError[n] = leafError[n];
+				numOfLeaves[n] = 1;
+			}
+			if (n > 0) {
+				subtreeError[parent[n]] += subtreeError[n];
+				numOfLeaves[parent[n]] += numOfLeaves[n];
+			}
+		}
+
+		// collapses the weakest link until no subtree is cheaper as a leaf for any alpha
+		// (the root is then a leaf, unless it has a single leaf with less error)
+		boolean[] isInner = new boolean[numOfNodes];
+		boolean[] isRemoved = new boolean[numOfNodes];
+		int[] version = new int[numOfNodes];
+		double[] collapsedAt = new double[numOfNodes];
+		int[] stack = new int[numOfNodes];
+		PriorityQueue<Collapse> queue = new PriorityQueue<Collapse>();
+		for (int n = 0; n < numOfNodes; n++) {
+			isInner[n] = nodes.get(n).children != null;
+			collapsedAt[n] = isInner[n] ? Double.POSITIVE_INFINITY : Double.NEGATIVE_INFINITY;
+			if (isInner[n]) {
+				queue.add(new Collapse(gain(leafError[n], subtreeError[n], numOfLeaves[n]), n, 0));
+			}
+		}
+		List<Double> pathAlphas = new ArrayList<Double>();
+		pathAlphas.add(0.0);
+		double alpha = 0;
+		while (!queue.isEmpty()) {
+			Collapse collapse = queue.poll();
+			int n = collapse.node;
+			if (isRemoved[n] || !isInner[n] || collapse.version != version[n] || collapse.gain == Double.POSITIVE_INFINITY) {
+				continue;
+			}
+			// a collapse that an earlier collapse made weaker happens at the same alpha
+			alpha = Math.max(alpha, collapse.gain);
+			if (alpha > pathAlphas.get(pathAlphas.size() - 1)) {
+				pathAlphas.add(alpha);
+			}
+			collapsedAt[n] = alpha;
+			isInner[n] = false;
+			removeDescendants(n, isRemoved, stack);
+
+			// the ancestors lose the leaves and gain the error of the collapsed subtree
+			int lostLeaves = numOfLeaves[n] - 1;
+			double addedError = leafError[n] - subtreeError[n];
+			numOfLeaves[n] = 1;
+			subtreeError[n] = leafError[n];
+			for (int ancestor = parent[n]; ancestor >= 0; ancestor = parent[ancestor]) {
+				numOfLeaves[ancestor] -= lostLeaves;
+				subtreeError[ancestor] += addedError;
+				version[ancestor]++;
+				queue.add(new Collapse(gain(leafError[ancestor], subtreeError[ancestor], numOfLeaves[ancestor]),
+						ancestor, version[ancestor]));
+			}
+		}
+		alphas = new double[pathAlphas.size()];
+		for (int k = 0; k < alphas.length; k++) {
+			alphas[k] = pathAlphas.get(k);
+		}
+
+		// a node stops being an inner node when it collapses or when an ancestor does
+		innerUntil = new double[numOfNodes];
+		for (int n = 0; n < numOfNodes; n++) {
+			innerUntil[n] = n == 0 ? collapsedAt[n] : Math.min(collapsedAt[n], innerUntil[parent[n]]);
+		}
+	}
+
+	/**
+	 * Counts the validation errors of every subtree of the path in one pass over the validation rows.
+	 * The classifying node of a row in a subtree is the first node on the path of the row in the full tree
+	 * that is a leaf of the subtree, so every node on the path classifies the row for a range of the alphas.
+	 *
+	 * @param tree the compiled full tree
+	 * @param classifyingNodes the classifying node of every validation row in the full tree
+	 * @param classValues the class of every validation row
+	 * @param weights the weight of every validation row
+	 * @return the weight of the misclassified validation rows of the subtree of every alpha of the path
+	 */
+	double[] errors(ScoringTree tree, int[] classifyingNodes, double[] classValues, double[] weights) {
+		// the change of the error from the subtree of the previous alpha, at the index of every alpha
+		double[] changes = new double[alphas.length + 1];
+		for (int i = 0; i < classifyingNodes.length; i++) {
+			// the classifying node in the full tree classifies the row in every subtree where its parent is an inner node
+			int node = classifyingNodes[i];
+			double fromAlpha = Double.NEGATIVE_INFINITY;
+			while (node >= 0) {
+				double toAlpha = node == 0 ? Double.POSITIVE_INFINITY : innerUntil[parent[node]];
+				if (fromAlpha < toAlpha && tree.value(node) != classValues[i]) {
+					changes[firstIndex(fromAlpha)] += weights[i];
+					changes[firstIndex(toAlpha)] -= weights[i];
+				}
+				// an ancestor classifies the row in the subtrees where it is a leaf
+				node = parent[node];
+				fromAlpha = node < 0 ? 0 : innerUntil[node];
+			}
+		}
+		double[] errors = new double[alphas.length];
+		double error = 0;
+		for (int k = 0; k < alphas.length; k++) {
+			error += changes[k];
+			errors[k] = error;
+		}
+		return errors;
+	}
+
+	// returns the index of the first alpha of the path that is at least the given alpha
+	private int firstIndex(double alpha) {
+		int index = Arrays.binarySearch(alphas, alpha);
+		return index >= 0 ? index : -index - 1;
+	}
+
+	// returns the training error of the node as a leaf, the weight of its instances that aren't of its class
+	private static double leafError(Node node) {
+		if (node.classCounts == null) {
+			return 0;
+		}
+		double totalWeight = 0;
+		for (double count : node.classCounts) {
+			totalWeight += count;
+		}
+		return totalWeight - node.classCounts[(int) node.returnValue];
+	}
+
+	// returns the alpha from which the node is better as a leaf than as its subtree,
+	// the error that the subtree removes per leaf it adds
+	private static double gain(double leafError, double subtreeError, int numOfLeaves) {
+		double removedError = Math.max(0, leafError - subtreeError);
+		if (numOfLeaves <= 1) {
+			// a subtree of a single leaf costs no leaves, so it is kept only if it removes error
+			return removedError == 0 ? 0 : Double.POSITIVE_INFINITY;
+		}
+		return removedError / (numOfLeaves - 1);
+	}
+
+	// marks all the descendants of the node as removed, a removed node was removed with all its descendants,
+	// so every node is marked once in the whole path
+	private void removeDescendants(int node, boolean[] isRemoved, int[] stack) {
+		int size = 0;
+		stack[size++] = node;
+		while (size > 0) {
+			int n = stack[--size];
+			for (int child = firstChild[n]; child < firstChild[n] + numOfChildren[n]; child++) {
+				if (!isRemoved[child]) {
+					isRemoved[child] = true;
+					stack[size++] = child;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,210 @@
+package HomeWork2;
+
+import weka.core.Instances;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Estimates the classification statistics of a tree configuration by k-fold cross-validation.
+ * The data is encoded once, and every row is given a fold, stratified by class: the rows of every class
+ * are shuffled and dealt to the folds in turn. The tree of a fold is built from the row indexes of the
+ * other folds, and evaluated on the rows of its fold straight from the encoded columns, so no instances
+ * are copied. The folds are built and evaluated concurrently, every fold into its own statistics, and the
+ * statistics of the folds are merged when all the folds are done.
+ * The bins of the numeric attributes are the quantiles of all the rows, the rows of the test folds included,
+ * so all the folds share one encoded set. The bins don't depend on the classes, but the estimate isn't fully
+ * clean for numeric attributes: the split thresholds that a fold tree can choose depend on its test rows.
+ * The estimate of data with nominal attributes only is clean.
+ */
+public class CrossValidation {
+	// creates the tree of every fold, with the configuration that is evaluated
+	private final Supplier<DecisionTree> treeFactory;
+	// the statistics of every fold, and of all the folds
+	private EvaluationStatistics[] foldStatistics;
+	private EvaluationStatistics statistics;
+	protected int numFolds = 10;
+	// the number of threads of the cross-validation, split between the folds that are built at the same time
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+	// the seed of the folds
+	protected long seed = 1;
+
+	/**
+	 * @param treeFactory creates an unbuilt tree with the configuration to evaluate, for every fold
+	 */
+	public CrossValidation(Supplier<DecisionTree> treeFactory) {
+		this.treeFactory = treeFactory;
+	}
+
+	/**
+	 * Cross-validates the configuration on the given instances.
+	 * The numeric attributes are binned once by the quantiles of all the instances, the instances of the test
+	 * folds included, so the thresholds of the fold trees depend on the values (not the classes) of their test rows.
+	 *
+	 * @param instances instances with a nominal class
+	 * @return the statistics of all the folds together
+	 * @throws Exception if a tree can't be built
+	 */
+	public EvaluationStatistics run(Instances instances) throws Exception {
+		return run(EncodedInstances.encode(instances));
+	}
+
+	/**
+	 * Cross-validates the configuration on an ARFF or CSV file, loaded by {@link MappedDataLoader}.
+	 * The numeric attributes are binned when the file is loaded, by the quantiles of all the rows, like in
+	 * {@link #run(Instances)}.
+	 *
+	 * @param dataFile the data, the class is the last attribute
+	 * @return the statistics of all the folds together
+	 * @throws Exception if the file can't be read or a tree can't be built
+	 */
+	public EvaluationStatistics run(Path dataFile) throws Exception {
+		return run(MappedDataLoader.load(dataFile));
+	}
+
+	/**
+	 * Cross-validates the configuration on an encoded set.
+	 *
+	 * @param encoded the encoded instances
+	 * @return the statistics of all the folds together
+	 * @throws Exception if a tree can't be built
+	 */
+	EvaluationStatistics run(EncodedInstances encoded) throws Exception {
+		if (numFolds < 2 || numFolds > encoded.numInstances) {
+			throw new IllegalArgumentException("Can't split " + encoded.numInstances + " instances to " + numFolds + " folds");
+		}
+		int[] foldOf = assignFolds(encoded);
+		int parallelFolds = Math.max(1, Math.min(numThreads, numFolds));
+		int treeThreads = Math.max(1, numThreads / parallelFolds);
+		foldStatistics = new EvaluationStatistics[numFolds];
+
+		ExecutorService pool = Executors.newFixedThreadPool(parallelFolds);
+		try {
+			List<Future<EvaluationStatistics>> folds = new ArrayList<Future<EvaluationStatistics>>();
+			for (int f = 0; f < numFolds; f++) {
+				int fold = f;
+				folds.add(pool.submit(() -> runFold(encoded, foldOf, fold, treeThreads)));
+			}
+			for (int f = 0; f < numFolds; f++) {
+				foldStatistics[f] = folds.get(f).get();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		statistics = new EvaluationStatistics(encoded.numClasses);
+		for (EvaluationStatistics currentStatistics : foldStatistics) {
+			statistics.merge(currentStatistics);
+		}
+		return statistics;
+	}
+
+	// returns the fold of every row, stratified by class, the folds depend only on the seed and the classes
+	private int[] assignFolds(EncodedInstances encoded) {
+		SplittableRandom random = new SplittableRandom(seed);
+		int[] foldOf = new int[encoded.numInstances];
+		// the rows of every class, in the order of the rows
+		int[] classSizes = new int[encoded.numClasses];
+		for (int row = 0; row < encoded.numInstances; row++) {
+			classSizes[encoded.classColumn[row]]++;
+		}
+		int[][] classRows = new int[encoded.numClasses][];
+		for (int c = 0; c < encoded.numClasses; c++) {
+			classRows[c] = new int[classSizes[c]];
+			classSizes[c] = 0;
+		}
+		for (int row = 0; row < encoded.numInstances; row++) {
+			int c = encoded.classColumn[row];
+			classRows[c][classSizes[c]++] = row;
+		}
+
+		// shuffles the rows of every class, and deals them to the folds, continuing from the fold of the previous class
+		int nextFold = 0;
+		for (int[] rows : classRows) {
+			for (int i = rows.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int row = rows[i];
+				rows[i] = rows[j];
+				rows[j] = row;
+			}
+			for (int row : rows) {
+				foldOf[row] = nextFold;
+				nextFold = (nextFold + 1) % numFolds;
+			}
+		}
+		return foldOf;
+	}
+
+	// builds the tree of the fold from the rows of the other folds, and evaluates it on the rows of the fold
+	private EvaluationStatistics runFold(EncodedInstances encoded, int[] foldOf, int fold, int treeThreads) {
+		int foldSize = 0;
+		for (int f : foldOf) {
+			if (f == fold) {
+				foldSize++;
+			}
+		}
+		int[] trainingRows = new int[encoded.numInstances - foldSize];
+		int[] testRows = new int[foldSize];
+		for (int row = 0, t = 0, v = 0; row < encoded.numInstances; row++) {
+			if (foldOf[row] == fold) {
+				testRows[v++] = row;
+			}
+			else {
+				trainingRows[t++] = row;
+			}
+		}
+
+		DecisionTree tree = treeFactory.get();
+		tree.numThreads = treeThreads;
+		tree.buildClassifier(encoded, trainingRows);
+		CompiledTree compiledTree = tree.getCompiledTree();
+
+		// classifies the rows of the fold in blocks, every block copied to int columns once
+		EvaluationStatistics currentStatistics = new EvaluationStatistics(encoded.numClasses);
+		int[] nodes = new int[CompiledTree.BLOCK_SIZE];
+		for (int from = 0; from < foldSize; from += CompiledTree.BLOCK_SIZE) {
+			int to = Math.min(foldSize, from + CompiledTree.BLOCK_SIZE);
+			compiledTree.classifyingNodes(encoded.columns(testRows, from, to), 0, to - from, nodes);
+			for (int i = from; i < to; i++) {
+				currentStatistics.add(compiledTree.prediction(nodes[i - from]), encoded.classColumn[testRows[i]]);
+			}
+		}
+		return currentStatistics;
+	}
+
+	/**
+	 * @return the statistics of all the folds together, available after {@link #run(Instances)}
+	 */
+	public EvaluationStatistics statistics() {
+		return statistics;
+	}
+
+	/**
+	 * @param fold a fold index
+	 * @return the statistics of the tree of the fold on the rows of the fold, available after {@link #run(Instances)}
+	 */
+	public EvaluationStatistics foldStatistics(int fold) {
+		return foldStatistics[fold];
+	}
+
+	/**
+	 * @return the standard deviation of the error rates of the folds, available after {@link #run(Instances)}
+	 */
+	public double errorStandardDeviation() {
+		double sum = 0;
+		double sumOfSquares = 0;
+		for (EvaluationStatistics currentStatistics : foldStatistics) {
+			sum += currentStatistics.errorRate();
+			sumOfSquares += currentStatistics.errorRate() * currentStatistics.errorRate();
+		}
+		double mean = sum / numFolds;
+		return Math.sqrt(Math.max(0, sumOfSquares / numFolds - mean * mean));
+	}
+}
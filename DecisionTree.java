@@ -1,456 +1,1597 @@
 package HomeWork2;
 
 import weka.classifiers.Classifier;
+import weka.classifiers.UpdateableClassifier;
 import weka.core.*;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class DecisionTree implements Classifier, UpdateableClassifier {
+
+	/**
+	 * The order in which the nodes of the tree are built.
+	 */
+	public enum BuildOrder {
+		// all the nodes of a level before the nodes of the next level
+		LEVEL_WISE,
+		// the whole subtree of a node before its next sibling, so the frontier grows only with the depth
+		DEPTH_FIRST,
+		// the split that reduces the impurity of the tree the most first, so a node budget keeps the best splits
+		BEST_FIRST
+	}
 
-class Node {
-	Node[] children;
-	Node parent;
-	int attributeIndex;
-	double returnValue;
-	Instances nodeInstances;
-}
-
-public class DecisionTree implements Classifier {
 	private Node rootNode;
+	// the flat copy of the tree that classifies the instances, replaced whenever the tree is updated
+	// (every classification reads it once, so it can classify while the tree is updated)
+	private volatile CompiledTree compiledTree;
+	// an encoded set without rows, with the attributes and the bin edges of the training data
+	private EncodedInstances shape;
+	// the number of rows added by updateClassifier since the tree was last compiled
+	private int updatesSinceCompile;
+	// the number of nodes of the tree
+	private int numOfNodes;
+	// the memory of the node statistics in the frontier while building, and the memory of a single statistics
+	private final AtomicLong frontierBytes = new AtomicLong();
+	private long statisticsBytes;
+	// the attributes of the training data
+	private Instances trainingHeader;
 	protected boolean isGini;
 	private int class_index;
+	// the training set, encoded once into primitive columns
+	private EncodedInstances trainingData;
+	// the row indexes of the training set, every node being built owns a range of this array
+	private int[] rows;
 	protected int pValueIndex;
-	protected int maxHeight;
-	protected int currentHeight;
-	protected double averageHeight;
+	// the p-value of the pruning, any value in (0, 1] (NaN -> the p-value of pValueIndex)
+	protected double pValue = Double.NaN;
+	// the critical values of the last p-value of the pruning
+	private ChiSquareCriticalValues criticalValues;
+	// the number of threads that build the tree (1 -> sequential build)
+	protected int numThreads = 1;
+	// the number of random attributes that every node chooses its split from (0 -> all the attributes)
+	protected int numRandomAttributes = 0;
+	// the seed of the random attribute subsets
+	protected long seed = 1;
+	// the number of rows that a leaf collects between two split attempts in updateClassifier
+	protected int gracePeriod = 200;
+	// the probability that updateClassifier chooses a split attribute that isn't the best one (the delta of the Hoeffding bound)
+	protected double splitConfidence = 1e-7;
+	// updateClassifier splits by the best attribute when the Hoeffding bound is below this,
+	// even if the second best attribute is as good
+	protected double tieThreshold = 0.05;
+	// gets the metrics of building and scoring (null -> nothing is measured)
+	protected TreeMetricsListener metrics;
+	// a node with more rows chooses its split attribute by a random sample of this many rows,
+	// and counts only the chosen attribute on all its rows (0 -> every node is counted on all its rows)
+	protected int sampleSize = 0;
+	// the order in which the nodes are built
+	protected BuildOrder buildOrder = BuildOrder.LEVEL_WISE;
+	// the largest depth of a node (0 -> no limit)
+	protected int maxDepth = 0;
+	// the smallest weight of instances in a child of a split (0 -> no limit)
+	protected double minLeafSize = 0;
+	// the largest number of nodes of the tree (0 -> no limit), the splits beyond it are turned into leaves
+	protected int maxNodes = 0;
+	// the largest memory of the node statistics that wait in the frontier while building (0 -> no limit),
+	// the statistics beyond it are dropped and counted again when their nodes are built
+	protected long maxFrontierBytes = 0;
+	// the largest number of cached classifying nodes of instances, by the values of the attributes that the
+	// tree splits by (0 -> no cache), the cache starts empty whenever the tree is compiled again
+	protected int predictionCacheSize = 0;
+	// the cache of the compiled tree (null if there is no cache)
+	private volatile PredictionCache predictionCache;
 
 	@Override
 	public void buildClassifier(Instances arg0) throws Exception {
-	    rootNode = new Node();
-		rootNode.nodeInstances = arg0;
-		class_index = arg0.classIndex();
-		buildTree(arg0);
+		EncodedInstances instancesSet = EncodedInstances.encode(arg0);
+
+		// the root node owns all the rows
+		int[] allRows = new int[instancesSet.numInstances];
+		for (int i = 0; i < allRows.length; i++) {
+			allRows[i] = i;
+		}
+		buildClassifier(instancesSet, allRows);
 	}
 
-	private void buildTree(Instances instancesSet) throws Exception {
+	/**
+	 * Builds the tree from the given rows of an encoded training set. A row can appear more than once,
+	 * so a bootstrap sample is given as an array of row indexes instead of a copy of the instances.
+	 *
+	 * @param instancesSet the encoded training set
+	 * @param sample the row indexes of the training instances, reordered in place while building
+	 */
+	void buildClassifier(EncodedInstances instancesSet, int[] sample) {
+		rootNode = new Node();
+		rootNode.seed = seed;
+		if (metrics != null) {
+			metrics.nodeCreated(0);
+		}
+		class_index = instancesSet.classIndex;
+		trainingData = instancesSet;
+		trainingHeader = trainingData.header;
+		rows = sample;
+		buildTree();
+		// the encoded set and the rows are needed only while building
+		trainingData = null;
+		rows = null;
+		shape = instancesSet.shape();
+		compile();
+	}
 
-		java.util.Queue<Node> queue = new LinkedList<Node>();
-		Node currentNode;
-		rootNode.nodeInstances = instancesSet;
-		queue.add(rootNode);
+	/**
+	 * Builds the tree from an ARFF or CSV file, loaded straight into encoded columns by {@link MappedDataLoader}
+	 * without creating instances. The class is the last attribute, and the tree is the same as the one built
+	 * from the instances of the file.
+	 *
+	 * @param dataFile the training data
+	 * @throws IOException if the file can't be read
+	 */
+	public void buildClassifier(Path dataFile) throws IOException {
+		EncodedInstances instancesSet = MappedDataLoader.load(dataFile);
+		int[] allRows = new int[instancesSet.numInstances];
+		for (int i = 0; i < allRows.length; i++) {
+			allRows[i] = i;
+		}
+		buildClassifier(instancesSet, allRows);
+	}
+
+	/**
+	 * Builds the tree from an ARFF file that doesn't have to fit in memory. The rows are streamed
+	 * from the file once for every level of the tree, and the class is the last attribute.
+	 * The tree is the same as the one built level by level from the instances in memory: the node budget
+	 * (maxNodes) is spent level by level whatever the build order, and the frontier memory budget
+	 * (maxFrontierBytes) limits the statistics that a pass counts, so a level that doesn't fit is counted
+	 * in several passes.
+	 *
+	 * @param arffFile the training data
+	 * @param spillToDisk true to write the rows as value indexes to a temporary file in the first pass,
+	 *                    and read that file in the following passes instead of parsing the ARFF file
+	 * @throws Exception if the file can't be read
+	 */
+	public void buildClassifier(Path arffFile, boolean spillToDisk) throws Exception {
+		StreamingTreeBuilder builder = new StreamingTreeBuilder(this, arffFile, spillToDisk);
+		rootNode = builder.build();
+		trainingHeader = builder.header();
+		class_index = trainingHeader.classIndex();
+		shape = builder.shape();
+		compile();
+	}
+
+	/**
+	 * Saves the built tree in the binary model format, which can be scored with {@link MappedTree}.
+	 *
+	 * @param path the model file
+	 * @throws IOException if the file can't be written
+	 */
+	public void saveModel(Path path) throws IOException {
+		ModelFile.write(compiledTree, trainingHeader, path);
+	}
+
+	/**
+	 * Derives the tree that a build with the given p-value would give, without building it again.
+	 * Pruning by chi-square only turns nodes into leaves, so the derived tree is this tree with every
+	 * node whose split doesn't reach the critical value of the p-value turned into a leaf.
+	 * With a node budget (maxNodes) the derived tree can differ from a build with the p-value: this tree
+	 * spent the budget on nodes that the p-value prunes, and a build with the p-value (in any build order)
+	 * would spend it on other nodes instead.
+	 *
+	 * @param prunedPValueIndex a p-value index, at least the p-value index of this tree
+	 * @return a new tree, equal to the tree built with the given p-value index when there is no node budget
+	 */
+	public DecisionTree pruned(int prunedPValueIndex) {
+		DecisionTree tree = pruned(ChiSquareCriticalValues.P_VALUES[prunedPValueIndex]);
+		tree.pValueIndex = prunedPValueIndex;
+		tree.pValue = Double.NaN;
+		return tree;
+	}
+
+	/**
+	 * Derives the tree that a build with the given p-value would give, like {@link #pruned(int)}
+	 * but for any p-value.
+	 * The leaves of the derived tree keep the rows that they collected in {@link #updateClassifier(Instance)},
+	 * and a node that the p-value turns into a leaf starts collecting from no rows.
+	 *
+	 * @param prunedPValue a p-value in (0, 1], at most the p-value of this tree
+	 * @return a new tree, equal to the tree built with the given p-value when there is no node budget
+	 */
+	public DecisionTree pruned(double prunedPValue) {
+		if (prunedPValue > pruningPValue()) {
+			throw new IllegalArgumentException("A tree built with p-value " + pruningPValue()
+					+ " can't derive the less pruned tree of p-value " + prunedPValue);
+		}
+		DecisionTree tree = new DecisionTree();
+		tree.isGini = isGini;
+		tree.pValueIndex = pValueIndex;
+		tree.pValue = prunedPValue;
+		tree.numThreads = numThreads;
+		tree.numRandomAttributes = numRandomAttributes;
+		tree.seed = seed;
+		tree.gracePeriod = gracePeriod;
+		tree.splitConfidence = splitConfidence;
+		tree.tieThreshold = tieThreshold;
+		tree.metrics = metrics;
+		tree.sampleSize = sampleSize;
+		tree.buildOrder = buildOrder;
+		tree.maxDepth = maxDepth;
+		tree.minLeafSize = minLeafSize;
+		tree.maxNodes = maxNodes;
+		tree.maxFrontierBytes = maxFrontierBytes;
+		tree.predictionCacheSize = predictionCacheSize;
+		tree.class_index = class_index;
+		tree.trainingHeader = trainingHeader;
+		tree.shape = shape;
+		tree.rootNode = prunedCopy(rootNode, null, tree.criticalValues());
+		tree.compile();
+		return tree;
+	}
+
+	// copies the node and its descendants, and turns the nodes that the given p-value prunes into leaves
+	private Node prunedCopy(Node node, Node parent, ChiSquareCriticalValues prunedCriticalValues) {
+		Node copy = new Node();
+		copy.parent = parent;
+		copy.attributeIndex = node.attributeIndex;
+		copy.returnValue = node.returnValue;
+		copy.depth = node.depth;
+		copy.threshold = node.threshold;
+		copy.thresholdBin = node.thresholdBin;
+		copy.classCounts = node.classCounts.clone();
+		copy.seed = node.seed;
+		copy.chiSquare = node.chiSquare;
+		copy.degreeOfFreedom = node.degreeOfFreedom;
+		if (node.children == null) {
+			// a remainder without siblings is a copy of the statistics
+			if (node.updates != null) {
+				copy.updates = NodeStatistics.remainder(shape, node.updates, Collections.<NodeStatistics>emptyList());
+			}
+			return copy;
+		}
+		if (node.chiSquare < prunedCriticalValues.criticalValue(node.degreeOfFreedom)) {
+			if (metrics != null) {
+				metrics.branchPruned(prunedCriticalValues.pValue);
+			}
+			return copy;
+		}
+		copy.children = new Node[node.children.length];
+		for (int i = 0; i < node.children.length; i++) {
+			if (node.children[i] != null) {
+				copy.children[i] = prunedCopy(node.children[i], copy, prunedCriticalValues);
+			}
+		}
+		return copy;
+	}
+
+	/**
+	 * @return the alphas of the cost-complexity pruning path of the tree, in increasing order from 0 (see {@link CostComplexityPruning}),
+	 * the subtree of the path changes at every alpha, and the subtree of the last alpha is the root as a leaf,
+	 * unless the root has a single leaf with less training error than the root (that no alpha collapses)
+	 */
+	public synchronized double[] costComplexityAlphas() {
+		return new CostComplexityPruning(rootNode).alphas.clone();
+	}
+
+	/**
+	 * Derives the subtree of the cost-complexity pruning path of the given alpha: the subtree whose training error
+	 * plus alpha times its number of leaves is the lowest, without building it again.
+	 * Like in {@link #pruned(double)}, the leaves keep the rows that they collected in {@link #updateClassifier(Instance)},
+	 * and a collapsed node starts collecting from no rows.
+	 *
+	 * @param alpha the cost of a leaf, at least 0
+	 * @return a new tree, this tree with every node that isn't an inner node of the subtree turned into a leaf
+	 */
+	public DecisionTree costComplexityPruned(double alpha) {
+		DecisionTree tree = pruned(pruningPValue());
+		synchronized (tree) {
+			tree.pruneCostComplexity(new CostComplexityPruning(tree.rootNode), alpha);
+		}
+		return tree;
+	}
+
+	/**
+	 * Prunes the tree in place to the subtree of its cost-complexity pruning path with the lowest validation error,
+	 * instead of building a tree for every candidate pruning. The validation instances are classified once by the
+	 * full tree, and the errors of all the subtrees of the path are read from their paths in the tree.
+	 * On a tie the smaller subtree (the larger alpha) is chosen.
+	 *
+	 * @param validationSet instances with known classes, that weren't used for building
+	 * @return the alpha of the chosen subtree
+	 */
+	public synchronized double costComplexityPrune(Instances validationSet) {
+		if (updatesSinceCompile > 0) {
+			compile();
+		}
+		CostComplexityPruning path = new CostComplexityPruning(rootNode);
+		CompiledTree tree = compiledTree;
+		int numOfRows = validationSet.numInstances();
+		int[] classifyingNodes = new int[numOfRows];
+		tree.classifyingNodes(validationSet, classifyingNodes, numThreads > 1);
+		double[] classValues = new double[numOfRows];
+		double[] weights = new double[numOfRows];
+		for (int i = 0; i < numOfRows; i++) {
+			classValues[i] = validationSet.instance(i).classValue();
+			weights[i] = validationSet.instance(i).weight();
+		}
+
+		double[] errors = path.errors(tree, classifyingNodes, classValues, weights);
+		int best = 0;
+		for (int k = 1; k < errors.length; k++) {
+			if (errors[k] <= errors[best]) {
+				best = k;
+			}
+		}
+		pruneCostComplexity(path, path.alphas[best]);
+		return path.alphas[best];
+	}
+
+	// turns every inner node that isn't an inner node of the subtree of alpha into a leaf, and compiles the tree
+	// (a collapsed node keeps its return value, the class that the path counted its errors with)
+	private void pruneCostComplexity(CostComplexityPruning path, double alpha) {
+		for (int n = 0; n < path.nodes.size(); n++) {
+			Node currentNode = path.nodes.get(n);
+			if (currentNode.children != null && path.innerUntil[n] <= alpha) {
+				currentNode.children = null;
+				currentNode.threshold = Double.NaN;
+			}
+		}
+		compile();
+	}
+
+	// replaces the compiled tree by a compilation of the current nodes
+	private void compile() {
+		compiledTree = CompiledTree.compile(rootNode, shape.binEdges, shape.numValues, shape.numClasses);
+		// the nodes of the previous tree don't classify the instances of the new one
+		predictionCache = predictionCacheSize > 0 ? new PredictionCache(compiledTree, predictionCacheSize, metrics) : null;
+		numOfNodes = compiledTree.numNodes();
+		updatesSinceCompile = 0;
+	}
+
+	/**
+	 * Adds a labeled row to the built tree, in the style of a Hoeffding tree. The row is counted in the
+	 * leaf it reaches, and every gracePeriod rows the leaf checks whether its best split attribute is
+	 * better than the second best by more than the Hoeffding bound of the rows it collected (and that
+	 * the split passes the chi-square test of the p-value). If so the leaf is split, and its children
+	 * start collecting rows of their own. A value that the training data didn't have at an inner node
+	 * gets a new leaf. The cost of a row depends only on the size of the tree, not on the number of rows
+	 * seen so far. Rows with missing values are ignored.
+	 * Updates are serialized, and the instances are classified by the last compiled tree in the meantime.
+	 * The compiled tree is replaced when a classification changes, and at least every gracePeriod updates.
+	 *
+	 * @param instance a labeled instance with the attributes of the training data
+	 */
+	@Override
+	public synchronized void updateClassifier(Instance instance) {
+		CompiledTree tree = compiledTree;
+		int[] valueIndexes = new int[shape.numAttributes];
+		for (int a = 0; a < valueIndexes.length; a++) {
+			if (instance.isMissing(a)) {
+				return;
+			}
+			valueIndexes[a] = a == shape.classIndex ? (int) instance.value(a) : tree.valueIndex(a, instance.value(a));
+		}
+		int classValue = valueIndexes[shape.classIndex];
+		boolean changed = false;
 
-		while (!queue.isEmpty())
+		// routes the row to its leaf, and adds a leaf for a value that the node didn't have
+		Node currentNode = rootNode;
+		while (currentNode.children != null) {
+			int childIndex = childIndexOfValue(currentNode, valueIndexes[currentNode.attributeIndex]);
+			if (currentNode.children[childIndex] == null) {
+				// a tree that reached its node budget ignores a value that it doesn't have
+				if (maxNodes > 0 && numOfNodes >= maxNodes) {
+					if (changed) {
+						compile();
+					}
+					return;
+				}
+				numOfNodes++;
+				Node child = new Node();
+				child.parent = currentNode;
+				child.depth = currentNode.depth + 1;
+				if (metrics != null) {
+					metrics.nodeCreated(child.depth);
+				}
+				child.classCounts = new double[shape.numClasses];
+				child.returnValue = currentNode.returnValue;
+				currentNode.children[childIndex] = child;
+				changed = true;
+			}
+			currentNode = currentNode.children[childIndex];
+		}
+
+		// counts the row in the leaf
+		currentNode.classCounts[classValue] += instance.weight();
+		if (currentNode.updates == null) {
+			currentNode.updates = NodeStatistics.empty(shape);
+		}
+		currentNode.updates.add(valueIndexes, instance.weight());
+		double majority = majorityClass(currentNode.classCounts);
+		if (majority != currentNode.returnValue) {
+			currentNode.returnValue = majority;
+			changed = true;
+		}
+		if (currentNode.updates.numInstances % gracePeriod == 0 && trySplit(currentNode)) {
+			changed = true;
+		}
+
+		if (changed || ++updatesSinceCompile >= gracePeriod) {
+			compile();
+		}
+	}
+
+	// splits the leaf by the rows that were added to it if the Hoeffding bound allows it, returns true if it was split
+	private boolean trySplit(Node leaf) {
+		NodeStatistics statistics = leaf.updates;
+		if (statistics.isPerfectlyClassified() || (maxDepth > 0 && leaf.depth >= maxDepth)) {
+			return false;
+		}
+		int bestAttributeIndex = -1;
+		double bestGain = 0;
+		double secondGain = 0;
+		double currentGain;
+
+		// finds the best and the second best attributes (a numeric attribute by its best threshold)
+		for (int a = 0; a < statistics.valueClassCounts.length; a++) {
+			if (a == statistics.classIndex) {
+				continue;
+			}
+			currentGain = calcGain(statistics, a);
+			if (bestAttributeIndex == -1 || currentGain > bestGain) {
+				secondGain = bestGain;
+				bestGain = currentGain;
+				bestAttributeIndex = a;
+			}
+			else if (currentGain > secondGain) {
+				secondGain = currentGain;
+			}
+		}
+		if (bestGain <= 0) {
+			return false;
+		}
+
+		// the range of the gain: 1 for Gini, log(number of classes) for entropy
+		double range = isGini ? 1 : Math.log(statistics.numClasses);
+		double bound = Math.sqrt(range * range * Math.log(1 / splitConfidence) / (2.0 * statistics.numInstances));
+		if (bestGain - secondGain <= bound && bound >= tieThreshold) {
+			return false;
+		}
+
+		leaf.attributeIndex = bestAttributeIndex;
+		if (statistics.isNumeric(bestAttributeIndex)) {
+			leaf.thresholdBin = bestThresholdBin(statistics, bestAttributeIndex);
+			leaf.threshold = statistics.binEdges[bestAttributeIndex][leaf.thresholdBin];
+		}
+		double returnValue = leaf.returnValue;
+		// splits like a build, including the chi-square pruning
+		splitNode(leaf, statistics);
+		leaf.returnValue = returnValue;
+		int numOfChildren = 0;
+		for (int i = 0; leaf.children != null && i < leaf.children.length; i++) {
+			if (leaf.children[i] != null) {
+				numOfChildren++;
+			}
+		}
+		if (leaf.children == null || (maxNodes > 0 && numOfNodes + numOfChildren > maxNodes)) {
+			leaf.children = null;
+			leaf.threshold = Double.NaN;
+			return false;
+		}
+		numOfNodes += numOfChildren;
+		reportChildren(leaf);
+
+		// the children start with the class counts of the rows that the leaf collected
+		double[] table = statistics.splitTable(bestAttributeIndex, leaf.thresholdBin);
+		for (int i = 0; i < leaf.children.length; i++) {
+			Node child = leaf.children[i];
+			if (child != null) {
+				child.classCounts = Arrays.copyOfRange(table, i * statistics.numClasses, (i + 1) * statistics.numClasses);
+				child.returnValue = majorityClass(child.classCounts);
+			}
+		}
+		leaf.updates = null;
+		return true;
+	}
+
+	// returns the class with the most instances in the given counts (a tie goes to the last of the tied classes)
+	private static int majorityClass(double[] classCounts) {
+		int majorityClass = 0;
+		for (int c = 1; c < classCounts.length; c++) {
+			if (classCounts[c] >= classCounts[majorityClass]) {
+				majorityClass = c;
+			}
+		}
+		return majorityClass;
+	}
+
+	/**
+	 * @return the compiled form of the built tree, for scoring value index vectors
+	 */
+	public CompiledTree getCompiledTree() {
+		return compiledTree;
+	}
+
+	private void buildTree() {
+
+		// the root node owns all the rows
+		NodeRange root = new NodeRange(rootNode, 0, rows.length);
+		numOfNodes = 1;
+		statisticsBytes = NodeStatistics.sizeInBytes(trainingData);
+		frontierBytes.set(0);
+
+		if (numThreads <= 1)
 		{
-			currentNode = (Node)queue.remove();
-			// the HomeWork2.Node is perfectly classified
-			if(perfectlyClassified(currentNode.nodeInstances))
+			buildInOrder(root);
+			return;
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(numThreads);
+		try {
+			if (buildOrder == BuildOrder.BEST_FIRST || maxNodes > 0)
 			{
-				//Leaf
-				// sets return value as the value of one of the instances (since all the instances have the same value)
-				currentNode.returnValue = currentNode.nodeInstances.instance(0).classValue();
-				// moves to the next node in the queue
-				continue;
+				// the nodes are expanded one at a time, and the rows of a large node are counted in parallel
+				pool.invoke(ForkJoinTask.adapt(() -> buildInOrder(root)));
 			}
-			// the best attribute for the set in current node
-			currentNode.attributeIndex = bestAttribute(currentNode.nodeInstances);
-			// the function returns -1 if splitting the node won't improve the tree (gain = 0)
-			if(currentNode.attributeIndex == -1)
+			else if (buildOrder == BuildOrder.DEPTH_FIRST)
 			{
-				// Leaf
-				// setting the return value to be the return value of the majority of the instances
-				currentNode.returnValue = majorityValue(currentNode);
-				// moves to next node in the queue
+				// every subtree depends only on its own rows, so the subtrees are built in parallel
+				pool.invoke(new SubtreeTask(root));
+			}
+			else {
+				// every node depends only on its own rows, so the nodes of a level are built in parallel
+				// and the tree is the same as the one built sequentially
+				List<NodeRange> frontier = Collections.singletonList(root);
+				while (!frontier.isEmpty())
+				{
+					// builds all the nodes of the current level, and moves to the level of their children
+					frontier = pool.invoke(new FrontierTask(frontier, 0, frontier.size()));
+				}
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	// builds the tree one node at a time: the frontier holds the split nodes whose children weren't built yet,
+	// and is expanded in the build order (so the node budget is spent in that order, whatever the number of threads)
+	private void buildInOrder(NodeRange root)
+	{
+		java.util.Queue<NodeRange> frontier;
+		if (buildOrder == BuildOrder.BEST_FIRST)
+		{
+			// the split that reduces the impurity of the tree the most first, a tie goes to the node that was decided first
+			frontier = new PriorityQueue<NodeRange>((first, second) -> first.priority != second.priority
+					? Double.compare(second.priority, first.priority) : Long.compare(first.sequence, second.sequence));
+		}
+		else if (buildOrder == BuildOrder.DEPTH_FIRST)
+		{
+			frontier = Collections.asLifoQueue(new ArrayDeque<NodeRange>());
+		}
+		else {
+			frontier = new ArrayDeque<NodeRange>();
+		}
+		long sequence = 0;
+		List<NodeRange> children = new ArrayList<NodeRange>();
+		children.add(root);
+
+		while (true)
+		{
+			// decides the new nodes, and adds the split ones to the frontier
+			// (in reverse order for a depth first build, so the first child is expanded first)
+			for (int i = 0; i < children.size(); i++)
+			{
+				NodeRange child = children.get(buildOrder == BuildOrder.DEPTH_FIRST ? children.size() - 1 - i : i);
+				NodeStatistics statistics = decide(child);
+				if (statistics != null)
+				{
+					child.priority = calcGain(statistics, child.node.attributeIndex) * statistics.totalWeight;
+					child.sequence = sequence++;
+					holdStatistics(child, statistics);
+					frontier.add(child);
+				}
+			}
+			children.clear();
+			if (frontier.isEmpty())
+			{
+				return;
+			}
+
+			NodeRange current = frontier.remove();
+			NodeStatistics statistics = takeStatistics(current);
+			int numOfChildren = 0;
+			for (Node child : current.node.children)
+			{
+				if (child != null)
+				{
+					numOfChildren++;
+				}
+			}
+			// a split that exceeds the node budget turns the node into a leaf
+			if (maxNodes > 0 && numOfNodes + numOfChildren > maxNodes)
+			{
+				makeLeaf(current.node);
 				continue;
 			}
-			else
+			numOfNodes += numOfChildren;
+			expand(current, statistics, children);
+		}
+	}
+
+	// builds the subtree of a node, forking a task for every child of a large node
+	private class SubtreeTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final NodeRange range;
+
+		SubtreeTask(NodeRange range) {
+			this.range = range;
+		}
+
+		@Override
+		protected void compute() {
+			List<NodeRange> children = new ArrayList<NodeRange>();
+			buildNode(range, children);
+			if (range.to - range.from < NodeStatistics.PARALLEL_THRESHOLD)
+			{
+				// a small subtree is built by this task, depth first
+				Deque<NodeRange> stack = new ArrayDeque<NodeRange>(children);
+				while (!stack.isEmpty())
+				{
+					children.clear();
+					buildNode(stack.pop(), children);
+					for (int i = children.size() - 1; i >= 0; i--)
+					{
+						stack.push(children.get(i));
+					}
+				}
+				return;
+			}
+			List<SubtreeTask> tasks = new ArrayList<SubtreeTask>();
+			for (NodeRange child : children)
 			{
-				// splits the node instances to the relevant attribute's values
-				splitNode(currentNode, queue);
+				tasks.add(new SubtreeTask(child));
 			}
+			invokeAll(tasks);
 		}
 	}
 
-	private boolean perfectlyClassified (Instances currentNodeInstances)
+	// decides whether the node is a leaf or splits it, and adds its children to the given collection
+	private void buildNode(NodeRange current, Collection<NodeRange> children)
 	{
-		// the class of the first instance
-		double classification = currentNodeInstances.instance(0).classValue();
-		// for all the instances in the current node
-		for(int i = 1; i < currentNodeInstances.numInstances(); i++)
-		{
-			// the instance class is different than the class of the first instance
-			// the instances are not perfectly classified
-			if(currentNodeInstances.instance(i).classValue() != classification)
-				return false;
+		NodeStatistics statistics = decide(current);
+		if (statistics != null)
+		{
+			expand(current, statistics, children);
 		}
-		// all the instances have the same classification
-		return true;
 	}
 
-	private int bestAttribute (Instances currentNodeInstances)
+	// decides whether the node is a leaf or splits it, returns the statistics that decided a split node (null for a leaf)
+	private NodeStatistics decide(NodeRange current)
 	{
-		int bestAttributeIndex = 0;
-		// calculates the gain with attribute number 0
-		double maxGain = calcGain(currentNodeInstances,0);
-		double currentGain;
+		Node currentNode = current.node;
+		NodeStatistics statistics = takeStatistics(current);
+		// the split attribute chosen by a sample of the rows (-1 if the node wasn't sampled)
+		// a node whose derived statistics were dropped is counted in full, like it would be with the statistics
+		int sampledAttribute = -1;
+		if (statistics == null && !current.isEvicted && sampleSize > 0 && current.to - current.from > sampleSize)
+		{
+			sampledAttribute = sampledAttribute(current);
+		}
+		long start = metrics == null ? 0 : System.nanoTime();
+		if (sampledAttribute != -1)
+		{
+			// confirms the sampled attribute by counting it on all the rows, once
+			statistics = NodeStatistics.count(trainingData, rows, current.from, current.to, sampledAttribute);
+			if (!statistics.isPerfectlyClassified() && calcGain(statistics, sampledAttribute) == 0)
+			{
+				// the sample was misleading, the node is decided by all the attributes
+				statistics = null;
+				sampledAttribute = -1;
+			}
+			else if (metrics != null)
+			{
+				start = reportPhase(TreeMetricsListener.Phase.COUNTING, current.to - current.from, start);
+			}
+		}
+		current.isSampled = sampledAttribute != -1;
+		// counts the rows of the node once, for all the attributes (unless they were derived from the parent)
+		if (statistics == null)
+		{
+			statistics = NodeStatistics.count(trainingData, rows, current.from, current.to);
+			if (metrics != null)
+			{
+				reportPhase(TreeMetricsListener.Phase.COUNTING, current.to - current.from, start);
+			}
+		}
+
+		boolean isSplit = sampledAttribute == -1 ? decideNode(currentNode, statistics)
+				: decideNode(currentNode, statistics, new int[] {sampledAttribute});
+		return isSplit ? statistics : null;
+	}
 
-		// for all the attributes of the instances
-		for(int i = 1; i < currentNodeInstances.numAttributes() - 1; i++)
+	// moves the rows of a split node to the ranges of its children, and adds the children to the given collection
+	// (null statistics are counted again, for the split attribute only)
+	private void expand(NodeRange current, NodeStatistics statistics, Collection<NodeRange> children)
+	{
+		Node currentNode = current.node;
+		// the children are counted only once the node is expanded, after the node budget kept them
+		reportChildren(currentNode);
+		// the statistics of a sampled node, or of a node that was counted again, have the table of the split attribute only
+		boolean isPartial = current.isSampled;
+		long start = metrics == null ? 0 : System.nanoTime();
+		if (statistics == null)
 		{
-			// calculates the gain by attribute index i
-			currentGain = calcGain(currentNodeInstances,i);
-			// the calculated gain is larger than the max gain calculated so far
-			if(currentGain > maxGain)
+			statistics = NodeStatistics.count(trainingData, rows, current.from, current.to, currentNode.attributeIndex);
+			isPartial = true;
+			if (metrics != null)
 			{
-				maxGain = currentGain;
-				bestAttributeIndex = i;
+				reportPhase(TreeMetricsListener.Phase.COUNTING, current.to - current.from, start);
+			}
+		}
+		// the number of rows of every child
+		int[] childrenSizes = childrenSizes(current, statistics);
+		// the rows of child i will be at [childrenStarts[i], childrenStarts[i + 1])
+		int numOfValues = currentNode.children.length;
+		int[] childrenStarts = new int[numOfValues + 1];
+		int largestChild = -1;
+		int numOfChildren = 0;
+		childrenStarts[0] = current.from;
+		for (int i = 0; i < numOfValues; i++){
+			childrenStarts[i + 1] = childrenStarts[i] + childrenSizes[i];
+			if (currentNode.children[i] != null)
+			{
+				numOfChildren++;
+			}
+			if (currentNode.children[i] != null && (largestChild == -1
+					|| childrenStarts[i + 1] - childrenStarts[i] > childrenStarts[largestChild + 1] - childrenStarts[largestChild]))
+			{
+				largestChild = i;
 			}
 		}
+		// moves the rows of every child to its range
+		start = metrics == null ? 0 : System.nanoTime();
+		partitionRows(currentNode, childrenStarts);
+		if (metrics != null)
+		{
+			start = reportPhase(TreeMetricsListener.Phase.PARTITIONING, current.to - current.from, start);
+		}
 
-		// splitting the node won't improve the tree (gain = 0 for every attribute)
-		if(maxGain == 0)
+		// counts the rows of every child except the largest one,
+		// the statistics of the largest child are the statistics of the node minus the statistics of the others
+		// (partial statistics have the table of a single attribute, so the children count their rows when they are built,
+		// and weighted rows are always counted since the subtraction is exact only for unit weights)
+		// the statistics of the children wait in the frontier, so they are kept only within maxFrontierBytes
+		NodeStatistics[] childrenStatistics = new NodeStatistics[numOfValues];
+		boolean isDerived = !isPartial && reserveStatistics(numOfChildren);
+		if (isDerived)
 		{
-			return (-1);
+			boolean isSubtracted = trainingData.weights == null;
+			List<NodeStatistics> counted = new ArrayList<NodeStatistics>();
+			int numOfCountedRows = 0;
+			for (int i = 0; i < numOfValues; i++){
+				if (currentNode.children[i] != null && (i != largestChild || !isSubtracted))
+				{
+					childrenStatistics[i] = NodeStatistics.count(trainingData, rows, childrenStarts[i], childrenStarts[i + 1]);
+					counted.add(childrenStatistics[i]);
+					numOfCountedRows += childrenStarts[i + 1] - childrenStarts[i];
+				}
+			}
+			if (isSubtracted)
+			{
+				childrenStatistics[largestChild] = NodeStatistics.remainder(trainingData, statistics, counted);
+			}
+			if (metrics != null)
+			{
+				reportPhase(TreeMetricsListener.Phase.COUNTING, numOfCountedRows, start);
+			}
 		}
 
-		return bestAttributeIndex;
+		for (int i = 0; i < numOfValues; i++){
+			if (currentNode.children[i] != null)
+			{
+				// adds the descendant nodes to the queue
+				NodeRange child = new NodeRange(currentNode.children[i], childrenStarts[i], childrenStarts[i + 1], childrenStatistics[i]);
+				// the children of a node that wasn't sampled would have derived statistics without the memory budget
+				child.isEvicted = !isDerived && !current.isSampled;
+				children.add(child);
+			}
+		}
 	}
 
-	private double calcGain(Instances instancesInCurrentNode, int attributeIndex)
+	// returns the statistics that wait in the frontier with the node (null if it has none), and releases their memory
+	private NodeStatistics takeStatistics(NodeRange range)
 	{
-		// the number of possible values for this attribute
-		int numOfAttributeValue = instancesInCurrentNode.attribute(attributeIndex).numValues();
-		double sum;
-		double fatherProb;
-
-		double[] attributesDistribution = new double[numOfAttributeValue];
-		double[] kidsRecurrenceProb = new double[numOfAttributeValue];
+		NodeStatistics statistics = range.statistics;
+		if (statistics != null)
+		{
+			range.statistics = null;
+			releaseStatistics(1);
+		}
+		return statistics;
+	}
 
-		// fills attributesDistribution array with the probabilities of attribute's values in every attribute
-		// fills kidsRecurrenceProb array with the probabilities of 'recurrence-events' for every attribute value
-		// returns the probability of 'recurrence-events' for the instances in the father node
-		double recurrenceFather = calcProb(instancesInCurrentNode, attributeIndex, attributesDistribution, kidsRecurrenceProb);
+	// keeps the statistics of a split node in the frontier until it is expanded, if they fit in maxFrontierBytes
+	// (otherwise the split attribute is counted again when the node is expanded)
+	private void holdStatistics(NodeRange range, NodeStatistics statistics)
+	{
+		if (reserveStatistics(1))
+		{
+			range.statistics = statistics;
+		}
+	}
 
-		// using Gini as the impurity measure
-		if (isGini){
+	// reserves the frontier memory of the given number of statistics, returns false if it would exceed maxFrontierBytes
+	private boolean reserveStatistics(int numOfStatistics)
+	{
+		if (maxFrontierBytes <= 0)
+		{
+			return true;
+		}
+		long bytes = numOfStatistics * statisticsBytes;
+		while (true)
+		{
+			long reserved = frontierBytes.get();
+			if (reserved + bytes > maxFrontierBytes)
+			{
+				return false;
+			}
+			if (frontierBytes.compareAndSet(reserved, reserved + bytes))
+			{
+				return true;
+			}
+		}
+	}
 
-			fatherProb = calcGini(recurrenceFather);
-			sum = 0;
+	// releases the frontier memory of the given number of statistics
+	private void releaseStatistics(int numOfStatistics)
+	{
+		if (maxFrontierBytes > 0)
+		{
+			frontierBytes.addAndGet(-numOfStatistics * statisticsBytes);
+		}
+	}
 
-			for (int i = 0; i < numOfAttributeValue; i++){
+	// reports the children of a split node that the tree keeps to the metrics
+	void reportChildren(Node node)
+	{
+		if (metrics == null)
+		{
+			return;
+		}
+		for (Node child : node.children)
+		{
+			if (child != null)
+			{
+				metrics.nodeCreated(child.depth);
+			}
+		}
+	}
 
-				// |Sv|/|S| * GiniIndex(Sv)
-				sum += attributesDistribution[i] * calcGini(kidsRecurrenceProb[i]);
+	// turns a split node whose children weren't built into a leaf
+	static void makeLeaf(Node node)
+	{
+		node.children = null;
+		node.threshold = Double.NaN;
+		node.returnValue = majorityClass(node.classCounts);
+	}
 
+	// returns the number of rows of every child of the split node
+	private int[] childrenSizes(NodeRange current, NodeStatistics statistics)
+	{
+		Node currentNode = current.node;
+		int[] childrenSizes = new int[currentNode.children.length];
+		if (trainingData.weights == null)
+		{
+			// the weight of a child of unit weight rows is its number of rows
+			double[] table = statistics.splitTable(currentNode.attributeIndex, currentNode.thresholdBin);
+			for (int i = 0; i < childrenSizes.length; i++)
+			{
+				childrenSizes[i] = (int) statistics.valueCount(table, i);
 			}
+			return childrenSizes;
+		}
+		for (int i = current.from; i < current.to; i++)
+		{
+			childrenSizes[childIndex(currentNode, rows[i])]++;
+		}
+		return childrenSizes;
+	}
 
-			return  fatherProb - sum;
+	// chooses the split attribute of a large node by a random sample of sampleSize of its rows (drawn with repetitions),
+	// returns -1 if the sample doesn't split the node (then the node is decided by all its rows)
+	private int sampledAttribute(NodeRange current)
+	{
+		long start = metrics == null ? 0 : System.nanoTime();
+		int numOfRows = current.to - current.from;
+		// the sample depends only on the seed of the node, so it doesn't depend on the order of building the nodes
+		SplittableRandom random = new SplittableRandom(~current.node.seed);
+		int[] sample = new int[sampleSize];
+		for (int i = 0; i < sampleSize; i++)
+		{
+			sample[i] = rows[current.from + random.nextInt(numOfRows)];
 		}
-		// using Entropy as the impurity measure
-		else {
+		NodeStatistics statistics = NodeStatistics.count(trainingData, sample, 0, sampleSize);
+		statistics.scale = (double) numOfRows / sampleSize;
+		if (metrics != null)
+		{
+			start = reportPhase(TreeMetricsListener.Phase.COUNTING, sampleSize, start);
+		}
+		if (statistics.isPerfectlyClassified())
+		{
+			return -1;
+		}
+		int attributeIndex = bestAttribute(statistics, candidateAttributes(current.node, statistics));
+		if (metrics != null)
+		{
+			reportPhase(TreeMetricsListener.Phase.SPLIT_SEARCH, 0, start);
+		}
+		return attributeIndex;
+	}
 
-			fatherProb = calcEntropy(recurrenceFather);
-			sum = 0;
+	// reports a phase that started at the given time to the metrics listener, and returns the current time
+	private long reportPhase(TreeMetricsListener.Phase phase, long numOfRows, long start) {
+		long now = System.nanoTime();
+		metrics.phase(phase, numOfRows, now - start);
+		return now;
+	}
 
-			for (int i = 0; i < numOfAttributeValue; i++){
+	/**
+	 * Decides whether the node is a leaf or splits it, according to the statistics of its instances.
+	 *
+	 * @param currentNode a node without children
+	 * @param statistics the statistics of the instances of the node
+	 * @return true if the node was split (its children are set), false if it is a leaf
+	 */
+	boolean decideNode(Node currentNode, NodeStatistics statistics)
+	{
+		// the split attribute is the best of a random subset of the attributes, if set
+		return decideNode(currentNode, statistics, candidateAttributes(currentNode, statistics));
+	}
 
-				// calculates only if the value will contribute to the sum
-				if (kidsRecurrenceProb[i] != 0 && kidsRecurrenceProb[i] != 1) {
-					// |Sv|/|S| * Entropy(Sv)
-					sum += attributesDistribution[i] * calcEntropy(kidsRecurrenceProb[i]);
+	// decides the node like decideNode(Node, NodeStatistics), choosing the split from the given candidate attributes
+	// (null for all the attributes)
+	private boolean decideNode(Node currentNode, NodeStatistics statistics, int[] candidates)
+	{
+		// keeps the class distribution of the node for distributionForInstance
+		currentNode.classCounts = statistics.classCounts.clone();
+		// the HomeWork2.Node is perfectly classified
+		if(statistics.isPerfectlyClassified())
+		{
+			//Leaf
+			// sets return value as the class of the instances (since all the instances have the same value)
+			currentNode.returnValue = statistics.perfectClass();
+			return false;
+		}
+		// a node at the largest depth is a leaf
+		if (maxDepth > 0 && currentNode.depth >= maxDepth)
+		{
+			currentNode.returnValue = majorityValue(statistics);
+			return false;
+		}
+		long start = metrics == null ? 0 : System.nanoTime();
+		// the best attribute for the set in current node (of the candidate attributes)
+		currentNode.attributeIndex = bestAttribute(statistics, candidates);
+		// the function returns -1 if splitting the node won't improve the tree (gain = 0)
+		if(currentNode.attributeIndex == -1)
+		{
+			// Leaf
+			// setting the return value to be the return value of the majority of the instances
+			currentNode.returnValue = majorityValue(statistics);
+			return false;
+		}
+		// a numeric attribute splits at its best threshold
+		if (statistics.isNumeric(currentNode.attributeIndex))
+		{
+			currentNode.thresholdBin = bestThresholdBin(statistics, currentNode.attributeIndex);
+			currentNode.threshold = statistics.binEdges[currentNode.attributeIndex][currentNode.thresholdBin];
+		}
+		if (metrics != null)
+		{
+			reportPhase(TreeMetricsListener.Phase.SPLIT_SEARCH, 0, start);
+		}
+		// splits the node instances to the relevant attribute's values
+		splitNode(currentNode, statistics);
+		return currentNode.children != null;
+	}
+
+	// builds the nodes frontier[from, to) and returns their children, in the order of the nodes
+	private class FrontierTask extends RecursiveTask<List<NodeRange>> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<NodeRange> frontier;
+		private final int from;
+		private final int to;
+
+		FrontierTask(List<NodeRange> frontier, int from, int to) {
+			this.frontier = frontier;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected List<NodeRange> compute() {
+			int numOfRows = 0;
+			for (int i = from; i < to; i++) {
+				numOfRows += frontier.get(i).to - frontier.get(i).from;
+			}
+			// a single node or a few small nodes are built by this task
+			if (to - from == 1 || numOfRows < NodeStatistics.PARALLEL_THRESHOLD) {
+				List<NodeRange> children = new ArrayList<NodeRange>();
+				for (int i = from; i < to; i++) {
+					buildNode(frontier.get(i), children);
 				}
+				return children;
 			}
-
-			return  fatherProb - sum;
+			// splits the nodes between two tasks, idle threads steal the forked half
+			int middle = (from + to) >>> 1;
+			FrontierTask firstHalf = new FrontierTask(frontier, from, middle);
+			firstHalf.fork();
+			List<NodeRange> secondHalfChildren = new FrontierTask(frontier, middle, to).compute();
+			List<NodeRange> children = firstHalf.join();
+			children.addAll(secondHalfChildren);
+			return children;
 		}
 	}
 
-	private double calcGini(double probabilitySick)
+	// returns a random subset of numRandomAttributes attributes in increasing order (null for all the attributes)
+	// the subset depends only on the seed of the node, so it doesn't depend on the order of building the nodes
+	private int[] candidateAttributes(Node currentNode, NodeStatistics statistics)
 	{
-		// (|S1|/|S|)^2 + (|S2|/|S|)^2
-		double sum = Math.pow(probabilitySick, 2) + Math.pow(1 - probabilitySick, 2);
+		int numOfAttributes = statistics.valueClassCounts.length - 1;
+		if (numRandomAttributes <= 0 || numRandomAttributes >= numOfAttributes)
+		{
+			return null;
+		}
+		int[] attributes = new int[numOfAttributes];
+		for (int a = 0, i = 0; a < statistics.valueClassCounts.length; a++)
+		{
+			if (a != statistics.classIndex)
+			{
+				attributes[i++] = a;
+			}
+		}
+		// moves a random attribute to each of the first numRandomAttributes places
+		SplittableRandom random = new SplittableRandom(currentNode.seed);
+		for (int i = 0; i < numRandomAttributes; i++)
+		{
+			int j = i + random.nextInt(numOfAttributes - i);
+			int swapped = attributes[i];
+			attributes[i] = attributes[j];
+			attributes[j] = swapped;
+		}
+		int[] candidates = Arrays.copyOf(attributes, numRandomAttributes);
+		Arrays.sort(candidates);
+		return candidates;
+	}
 
-		return 1 - sum;
+	int bestAttribute (NodeStatistics statistics)
+	{
+		return bestAttribute(statistics, null);
 	}
 
-	private double calcEntropy(double probabilitySick)
+	// returns the best of the given candidate attributes (null for all the attributes)
+	int bestAttribute (NodeStatistics statistics, int[] candidates)
 	{
-		double sum = 0;
+		int bestAttributeIndex = -1;
+		double maxGain = 0;
+		double currentGain;
+		int numOfCandidates = candidates == null ? statistics.valueClassCounts.length : candidates.length;
 
-		// |Si|/|S| log |Si|/|S|
+		// for all the candidate attributes of the instances
+		for(int j = 0; j < numOfCandidates; j++)
+		{
+			int i = candidates == null ? j : candidates[j];
+			// the class is not a candidate attribute
+			if(i == statistics.classIndex)
+			{
+				continue;
+			}
+			// calculates the gain by attribute index i
+			currentGain = calcGain(statistics, i);
+			// the calculated gain is larger than the max gain calculated so far (or it is the first attribute)
+			if(bestAttributeIndex == -1 || currentGain > maxGain)
+			{
+				maxGain = currentGain;
+				bestAttributeIndex = i;
+			}
+		}
 
-		sum = probabilitySick * Math.log(probabilitySick) + (1 - probabilitySick) * Math.log(1 - probabilitySick);
+		// splitting the node won't improve the tree (gain = 0 for every attribute)
+		if(maxGain == 0)
+		{
+			return (-1);
+		}
 
-		return sum * (-1);
+		return bestAttributeIndex;
 	}
 
-	// returns the father probability for 'recurrence-events'
-	// adds to attributesDistribution array the probabilities of 'recurrence-events' for every attribute value
-	// adds to kidsRecurrenceProb array the probabilities of 'recurrence-events' for every attribute value
-	private double calcProb(Instances instancesInCurrentNode, int attributeIndex,
-							double[] attributesDistribution, double[] kidsRecurrenceProb){
+	double calcGain(NodeStatistics statistics, int attributeIndex)
+	{
+		// the gain of a numeric attribute is the gain of its best threshold
+		if (statistics.isNumeric(attributeIndex))
+		{
+			int thresholdBin = bestThresholdBin(statistics, attributeIndex);
+			return thresholdBin == -1 ? 0 : calcGain(statistics, statistics.splitTable(attributeIndex, thresholdBin));
+		}
+		return calcGain(statistics, statistics.valueClassCounts[attributeIndex]);
+	}
 
-		// the probability of 'recurrence-events' in the father node
-		double recurrenceFather = 0;
+	// returns the last bin of the first child of the best threshold split of a numeric attribute
+	// (-1 if all the instances are in a single bin)
+	int bestThresholdBin(NodeStatistics statistics, int attributeIndex)
+	{
+		double[] histogram = statistics.valueClassCounts[attributeIndex];
+		int lastBin = statistics.numValues(attributeIndex) - 1;
+		int bestBin = -1;
+		double maxGain = 0;
+		double currentGain;
 
-		// for every instance in the current node
-		for (int i = 0; i < instancesInCurrentNode.numInstances(); i++ ){
+		// the last bin with instances can't be a threshold, the second child would be empty
+		while (lastBin > 0 && statistics.valueCount(histogram, lastBin) == 0)
+		{
+			lastBin--;
+		}
+		for (int b = 0; b < lastBin; b++)
+		{
+			// an empty bin splits like the bin before it, and the first child must have instances
+			if (statistics.valueCount(histogram, b) == 0)
+			{
+				continue;
+			}
+			currentGain = calcGain(statistics, statistics.splitTable(attributeIndex, b));
+			if (bestBin == -1 || currentGain > maxGain)
+			{
+				maxGain = currentGain;
+				bestBin = b;
+			}
+		}
+
+		return bestBin;
+	}
 
-			Instance currentInstance = instancesInCurrentNode.instance(i);
-			// gets the current instance attribute value
-			String currentVal = currentInstance.stringValue(attributeIndex);
-			// gets the index of the instance attribute value
-			int AttributeValueIndex = instancesInCurrentNode.attribute(attributeIndex).indexOfValue(currentVal);
-			// increments the number of instances with currentVal attribute value
-			attributesDistribution[AttributeValueIndex]++;
+	// returns the gain of splitting the node by the given (child x class) table
+	private double calcGain(NodeStatistics statistics, double[] valueClassCounts)
+	{
+		int numClasses = statistics.numClasses;
+		// the number of children of the split
+		int numOfAttributeValue = valueClassCounts.length / numClasses;
+		// the weight of the instances of the node
+		double numOfInstances = statistics.totalWeight;
+		// the impurity of the father node
+		double fatherImpurity = calcImpurity(statistics.classCounts, 0, numClasses, numOfInstances);
+		double sum = 0;
+		double childCount;
 
-			// if the classification of this instance is 'recurrence-events'
-			if (currentInstance.classValue() == 0){
-				// increments the number of instances with classification 'recurrence-events' (in the father node)
-				recurrenceFather++;
-				// increments the number of instances with classification 'recurrence-events' (in the children nodes)
-				kidsRecurrenceProb[AttributeValueIndex]++;
+		for (int i = 0; i < numOfAttributeValue; i++){
+			childCount = statistics.valueCount(valueClassCounts, i);
+			// a split with a child below the smallest leaf size isn't allowed
+			if (childCount != 0 && minLeafSize > 0 && childCount * statistics.scale < minLeafSize) {
+				return 0;
+			}
+			// an empty child doesn't contribute to the sum
+			if (childCount != 0) {
+				// |Sv|/|S| * Impurity(Sv)
+				sum += childCount / numOfInstances * calcImpurity(valueClassCounts, i * numClasses, numClasses, childCount);
 			}
 		}
 
-		//calculates the probability of 'recurrence-events' in the father node
-		recurrenceFather = recurrenceFather / instancesInCurrentNode.numInstances();
+		return fatherImpurity - sum;
+	}
 
-		//calculates the probability of 'recurrence-events' in every child node
-		//calculates the probability of being in class 'classIndex' in the father node
-		for (int i = 0; i < attributesDistribution.length; i++){
+	// returns the impurity of the class counts at counts[offset, offset + numClasses), using Gini or Entropy
+	private double calcImpurity(double[] counts, int offset, int numClasses, double numOfInstances)
+	{
+		double sum = 0;
+		double probability;
+
+		// two classes use the binary measures of the probability of the first class, in the arithmetic of the
+		// binary measures, so the gains (and the ties between them) of two-class trees don't change
+		if (numClasses == 2){
+			probability = counts[offset] / numOfInstances;
+			if (isGini){
+				// (|S1|/|S|)^2 + (|S2|/|S|)^2
+				sum = Math.pow(probability, 2) + Math.pow(1 - probability, 2);
+				return 1 - sum;
+			}
+			// a pure set has no entropy
+			if (probability == 0 || probability == 1){
+				return 0;
+			}
+			// |Si|/|S| log |Si|/|S|
+			sum = probability * Math.log(probability) + (1 - probability) * Math.log(1 - probability);
+			return sum * (-1);
+		}
 
-			if (attributesDistribution[i] != 0) {
-				// num of instances that are classified as 'recurrence-events' in attribute value i / num of
-				// instances in attribute value i
-				kidsRecurrenceProb[i] = kidsRecurrenceProb[i] / attributesDistribution[i];
-				// num of instances with attribute value i / num of instances in the father node
-				attributesDistribution[i] = attributesDistribution[i] / instancesInCurrentNode.numInstances();
+		for (int c = 0; c < numClasses; c++){
+			// |Sc|/|S|
+			probability = counts[offset + c] / numOfInstances;
+			if (isGini){
+				// sum of (|Sc|/|S|)^2
+				sum += probability * probability;
+			}
+			// an empty class doesn't contribute to the entropy
+			else if (probability != 0){
+				// sum of |Sc|/|S| log |Sc|/|S|
+				sum += probability * Math.log(probability);
 			}
 		}
 
-		return recurrenceFather;
+		return isGini ? 1 - sum : -sum;
 	}
 
 	// returns the classification of the majority of instances in the current node
-	private double majorityValue(Node currentNode)
+	// (a tie goes to the last of the tied classes)
+	private double majorityValue(NodeStatistics statistics)
 	{
-		int numOfInstances = currentNode.nodeInstances.numInstances();
-		int counterOfRecurrence = 0;
-		Instance currentInstance;
+		int majorityClass = 0;
 
-		// counts the number of instance with 'recurrent-events' classification
-		for (int i = 0; i < numOfInstances; i++)
-		{
-			currentInstance = currentNode.nodeInstances.instance(i);
-			if (currentInstance.classValue() == 0) {
-				counterOfRecurrence++;
+		for (int c = 1; c < statistics.numClasses; c++){
+			if (statistics.classCounts[c] >= statistics.classCounts[majorityClass]){
+				majorityClass = c;
 			}
 		}
-		// checks the classification of the majority
-		if(counterOfRecurrence > numOfInstances - counterOfRecurrence)
-		{
-			// the classification of the majority is 'recurrence-events'
-			return 0;
+		return majorityClass;
+	}
+
+	// returns the p-value of the pruning
+	double pruningPValue() {
+		return Double.isNaN(pValue) ? ChiSquareCriticalValues.P_VALUES[pValueIndex] : pValue;
+	}
+
+	// returns the shared critical values of the p-value of the pruning
+	private ChiSquareCriticalValues criticalValues() {
+		ChiSquareCriticalValues current = criticalValues;
+		double currentPValue = pruningPValue();
+		if (current == null || current.pValue != currentPValue) {
+			current = ChiSquareCriticalValues.of(currentPValue);
+			criticalValues = current;
 		}
-		// the classification of the majority is 'no-recurrence-events'
-		return 1;
+		return current;
 	}
 
-	private void splitNode(Node parent, java.util.Queue queue) throws Exception {
-		double[][] tableOfChiSquaredProbabilities =
-				{
-						{0, 0.102, 0.455, 1.323, 3.841, 7.879},
-						{0, 0.575, 1.386, 2.773, 5.991, 10.597},
-						{0, 1.213, 2.366, 4.108, 7.815, 12.838},
-						{0, 1.923, 3.357, 5.385, 9.488, 14.860},
-						{0, 2.675, 4.351, 6.626, 11.070, 16.750},
-						{0, 3.455, 5.348, 7.841, 12.592, 18.548},
-						{0, 4.255, 6.346, 9.037, 14.067, 20.278},
-						{0, 5.071, 7.344, 10.219, 15.507, 21.955},
-						{0, 5.899, 8.343, 11.389, 16.919, 23.589},
-						{0, 6.737, 9.342, 12.549, 18.307, 25.188},
-						{0, 7.584, 10.341, 13.701, 19.675, 26.757},
-						{0, 8.438, 11.340, 14.845, 21.026, 28.300},
-						{0, 9.299, 12.340, 15.984, 22.362, 29.819}
-				};
-
-		Instances nodeInstances = parent.nodeInstances;
-		Attribute nodeAttribute = nodeInstances.attribute(parent.attributeIndex);
+	private void splitNode(Node parent, NodeStatistics statistics) {
+		// the (child x class) counts of the split
+		double[] table = statistics.splitTable(parent.attributeIndex, parent.thresholdBin);
+		int numOfValues = table.length / statistics.numClasses;
 		//initializes the children array by the number of possible values for the parent attribute index
-		parent.children = new Node[nodeAttribute.numValues()];
-		int recurrenceCounterParent = 0;
-		int degreeOfFreedom = 0;
-		double chiSquare;
-		Instances[] childrenInstances = new Instances[nodeAttribute.numValues()];
-		Instance currentInstance;
-		String currentInstanceValue;
-		int currentInstanceAttributeValueIndex;
-
-		// constructs an array of instances by the attribute's values
-		for (int i = 0; i < childrenInstances.length; i++){
-			childrenInstances[i] = new Instances(nodeInstances, 0, 0);
-		}
-		// for every instance in the node
-		for (int i = 0; i < nodeInstances.numInstances(); i++){
-			currentInstance = nodeInstances.instance(i);
-			// gets the value of the current instance in attribute attributeIndex
-			currentInstanceValue = currentInstance.stringValue(parent.attributeIndex);
-			// gets the index of this value
-			currentInstanceAttributeValueIndex = currentInstance.attribute(parent.attributeIndex).indexOfValue(currentInstanceValue);
-			// adds current instance to the suitable instances set according to the attribute's value
-			childrenInstances[currentInstanceAttributeValueIndex].add(currentInstance);
-			// increments the number of instances with 'recurrence-events' classification in parent if necessary
-			if(currentInstance.classValue() == 0)
-			{
-				recurrenceCounterParent++;
+		// (two children for a numeric attribute)
+		parent.children = new Node[numOfValues];
+		int numOfRelevantValues = 0;
+		int numOfRelevantClasses = 0;
+
+		// sets the node's return value by the value of the majority (a tie goes to the first of the tied classes)
+		int majorityClass = 0;
+		for (int c = 1; c < statistics.numClasses; c++){
+			if (statistics.classCounts[c] > statistics.classCounts[majorityClass]){
+				majorityClass = c;
 			}
 		}
-
-		// sets the node's return value by the value of the majority
-		if (recurrenceCounterParent >= nodeInstances.numInstances() - recurrenceCounterParent){
-			// the classification of the majority is 'recurrence-events'
-			parent.returnValue = 0;
-		}
-		// the classification of the majority is 'no-recurrence-events'
-		else {
-			parent.returnValue = 1;
-		}
+		parent.returnValue = majorityClass;
 		// counts the number of relevant attribute values (number of values that exists in the training data)
-		for (int i = 0; i < childrenInstances.length; i++){
-			if (!childrenInstances[i].isEmpty()){
-				degreeOfFreedom++;
+		for (int i = 0; i < numOfValues; i++){
+			if (statistics.valueCount(table, i) != 0){
+				numOfRelevantValues++;
+			}
+		}
+		// counts the number of classes that exist in the node
+		for (int c = 0; c < statistics.numClasses; c++){
+			if (statistics.classCounts[c] != 0){
+				numOfRelevantClasses++;
 			}
 		}
 
+		long start = metrics == null ? 0 : System.nanoTime();
+		// keeps the chi-square of the split, so a tree built without pruning can be pruned later
+		parent.chiSquare = calcChiSquare(statistics, table);
+		// calculates the degree of freedom according to the relevant number of values and classes
+		parent.degreeOfFreedom = (numOfRelevantValues - 1) * (numOfRelevantClasses - 1);
+
 		// pruning according to p-value
-		// pValueIndex 0 -> p-value = 1 (no pruning)
-		if (pValueIndex != 0){
-			chiSquare = calcChiSquare(nodeInstances, parent.attributeIndex);
-			// calculates the degree of freedom according to the relevant number of values
-			// -1 for calculating degree of freedom, -1 for array indexes
-			degreeOfFreedom -=  2;
-			// checks the need to prune
-			if (chiSquare < (tableOfChiSquaredProbabilities[degreeOfFreedom][pValueIndex])){
-				// pruning - parent node is a leaf
-				parent.children = null;
-				return;
+		// p-value = 1 -> critical value 0 (no pruning)
+		ChiSquareCriticalValues currentCriticalValues = criticalValues();
+		boolean isPruned = parent.chiSquare < currentCriticalValues.criticalValue(parent.degreeOfFreedom);
+		if (metrics != null){
+			reportPhase(TreeMetricsListener.Phase.PRUNING, 0, start);
+			if (isPruned){
+				metrics.branchPruned(currentCriticalValues.pValue);
 			}
 		}
-		// for every children of current node construct a node with the relevant instances set
-		for (int i = 0; i < childrenInstances.length; i++){
-			if(childrenInstances[i].isEmpty())
+		if (isPruned){
+			// pruning - parent node is a leaf
+			parent.children = null;
+			return;
+		}
+		// for every children of current node construct a node (if there are instances with its value)
+		for (int i = 0; i < numOfValues; i++){
+			if(statistics.valueCount(table, i) == 0)
 			{
 				continue;
 			}
 
 			Node child = new Node();
-			child.nodeInstances = childrenInstances[i];
 			child.parent = parent;
+			child.depth = parent.depth + 1;
+			// the seed of a child depends only on the seed of its parent and its index
+			child.seed = new SplittableRandom(parent.seed + i).nextLong();
 			parent.children[i] = child;
-			// adds the descendant nodes to the queue
-			queue.add(child);
 		}
 	}
 
-	protected double calcAvgError(Instances instancesSet){
-		Instance currentInstance;
-		double predictedClass;
-		double numOfErrors = 0;
-		double realClass;
-		double sumOfHeights = 0;
-		maxHeight = -1;
+	// reorders the rows in place so the rows of child i of the given node are at [childrenStarts[i], childrenStarts[i + 1])
+	private void partitionRows(Node parent, int[] childrenStarts) {
+		int numOfValues = childrenStarts.length - 1;
+		// the next position to fill in the range of every value
+		int[] next = Arrays.copyOf(childrenStarts, numOfValues);
+		int currentRow;
+		int currentValue;
+		int swappedRow;
+
+		for (int value = 0; value < numOfValues; value++){
+			// until the range of this value is full
+			while (next[value] < childrenStarts[value + 1]){
+				currentRow = rows[next[value]];
+				currentValue = childIndex(parent, currentRow);
+				if (currentValue == value){
+					// the row is already in the right range
+					next[value]++;
+				}
+				else {
+					// swaps the row into the range of its value, and checks the row that was swapped out
+					swappedRow = rows[next[currentValue]];
+					rows[next[currentValue]++] = currentRow;
+					rows[next[value]] = swappedRow;
+				}
+			}
+		}
+	}
+
+	// returns the index of the child of the given node that the given row goes to
+	private int childIndex(Node parent, int row) {
+		return childIndexOfValue(parent, trainingData.valueIndex(parent.attributeIndex, row));
+	}
+
+	// returns the index of the child of the given node that the given value index goes to
+	private static int childIndexOfValue(Node parent, int valueIndex) {
+		if (Double.isNaN(parent.threshold)) {
+			return valueIndex;
+		}
+		return valueIndex <= parent.thresholdBin ? 0 : 1;
+	}
 
+	protected double calcAvgError(Instances instancesSet){
+		// returns the average error
+		return evaluate(instancesSet).errorRate();
+	}
 
+	/**
+	 * Classifies every instance in the given set, and collects the errors and the heights of the classification paths.
+	 *
+	 * @param instancesSet instances with known classes
+	 * @return the statistics of the classified instances
+	 */
+	public EvaluationStatistics evaluate(Instances instancesSet){
+		// all the instances are classified by the same version of the tree
+		CompiledTree tree = compiledTree;
+		EvaluationStatistics statistics = new EvaluationStatistics(tree.numClasses());
+		int[] classifyingNodes = new int[instancesSet.numInstances()];
+		long start = metrics == null ? 0 : System.nanoTime();
+
+		// classifies all the instances in batches
+		tree.classifyingNodes(instancesSet, classifyingNodes, numThreads > 1);
+		if (metrics != null){
+			reportScoring(tree, classifyingNodes, start);
+		}
 		// for every instance
 		for (int i = 0; i < instancesSet.numInstances(); i++){
-			currentInstance = instancesSet.instance(i);
-			// finds the predicted classification for the current instance
-			predictedClass = classifyInstance(currentInstance);
+			// adds the predicted classification and the real classification of the current instance
+			statistics.add(tree.prediction(classifyingNodes[i]), instancesSet.instance(i).classValue());
+		}
+
+		return statistics;
+	}
 
-			// checks if the current height is bigger than maxHeight
-			if (currentHeight > maxHeight){
-				maxHeight = currentHeight;
+	/**
+	 * Evaluates the tree on an ARFF or CSV file with the attributes of the training data, loaded straight
+	 * into columns of the value indexes of the training data by {@link MappedDataLoader}.
+	 * The rows with a missing class are classified but not counted.
+	 *
+	 * @param dataFile instances with the attributes of the training data
+	 * @return the statistics of the classified instances with known classes
+	 * @throws IOException if the file can't be read
+	 */
+	public EvaluationStatistics evaluate(Path dataFile) throws IOException {
+		EncodedInstances instancesSet = MappedDataLoader.load(dataFile, shape);
+		CompiledTree tree = compiledTree;
+		EvaluationStatistics statistics = new EvaluationStatistics(tree.numClasses());
+		int numOfRows = instancesSet.numInstances;
+		int[] classifyingNodes = new int[numOfRows];
+		long start = metrics == null ? 0 : System.nanoTime();
+
+		// classifies the rows in blocks, every block copied to int columns once
+		int numOfBlocks = (numOfRows + CompiledTree.BLOCK_SIZE - 1) / CompiledTree.BLOCK_SIZE;
+		java.util.stream.IntStream blocks = java.util.stream.IntStream.range(0, numOfBlocks);
+		if (numThreads > 1) {
+			blocks = blocks.parallel();
+		}
+		blocks.forEach(block -> {
+			int from = block * CompiledTree.BLOCK_SIZE;
+			int to = Math.min(numOfRows, from + CompiledTree.BLOCK_SIZE);
+			int[] blockNodes = new int[to - from];
+			tree.classifyingNodes(instancesSet.columns(from, to), 0, to - from, blockNodes);
+			System.arraycopy(blockNodes, 0, classifyingNodes, from, to - from);
+		});
+		if (metrics != null){
+			reportScoring(tree, classifyingNodes, start);
+		}
+		for (int i = 0; i < numOfRows; i++){
+			// an unlabeled row has no error to count
+			if (instancesSet.classColumn[i] != CompiledTree.NONE){
+				statistics.add(tree.prediction(classifyingNodes[i]), instancesSet.classColumn[i]);
 			}
+		}
 
-			// adds current height to the sum of all heights
-			 sumOfHeights += currentHeight;
+		return statistics;
+	}
 
-			// gets the real classification of this instance
-			realClass = currentInstance.classValue();
-			// checks if the classification is correct
-			if (predictedClass != realClass){
-				// if not, increments the number of errors
-				numOfErrors++;
-			}
+	/**
+	 * Classifies all the instances in the given set.
+	 *
+	 * @param instancesSet the instances to classify
+	 * @param predictions gets the classification of instance i at predictions[i]
+	 * @param parallel true to split the instances between the available cores
+	 */
+	public void classifyBatch(Instances instancesSet, double[] predictions, boolean parallel){
+		int[] classifyingNodes = new int[instancesSet.numInstances()];
+		CompiledTree tree = compiledTree;
+		long start = metrics == null ? 0 : System.nanoTime();
+
+		tree.classifyingNodes(instancesSet, classifyingNodes, parallel);
+		for (int i = 0; i < classifyingNodes.length; i++){
+			predictions[i] = tree.value(classifyingNodes[i]);
 		}
+		if (metrics != null){
+			reportScoring(tree, classifyingNodes, start);
+		}
+	}
 
-		averageHeight = sumOfHeights / instancesSet.numInstances();
+	// reports the classification of a batch that started at the given time to the metrics listener
+	private void reportScoring(CompiledTree tree, int[] classifyingNodes, long start) {
+		long nanos = System.nanoTime() - start;
+		int numOfUnseenValues = 0;
+		for (int node : classifyingNodes){
+			if (tree.attribute[node] != CompiledTree.NONE){
+				numOfUnseenValues++;
+			}
+		}
+		metrics.scored(classifyingNodes.length, numOfUnseenValues, nanos);
+	}
 
-		// returns the average error
-		return numOfErrors / instancesSet.numInstances();
+	// finds the classifying node of the instance, and reports it to the metrics listener
+	private int classifyingNode(CompiledTree tree, Instance instance) {
+		// the cache of another compilation of the tree (read while the tree is compiled again) isn't used
+		PredictionCache cache = predictionCache;
+		if (cache != null && cache.tree != tree) {
+			cache = null;
+		}
+		if (metrics == null){
+			return cache == null ? tree.classifyingNode(instance) : cache.classifyingNode(instance);
+		}
+		long start = System.nanoTime();
+		int node = cache == null ? tree.classifyingNode(instance) : cache.classifyingNode(instance);
+		metrics.scored(1, tree.attribute[node] != CompiledTree.NONE ? 1 : 0, System.nanoTime() - start);
+		return node;
+	}
 
+	/**
+	 * Classifies a block of rows given as columns of value indexes.
+	 *
+	 * @param columns the value indexes of every attribute, columns[attribute][row] (negative for a missing value)
+	 * @param numOfRows the number of rows in the block
+	 * @param predictions gets the classification of row i at predictions[i]
+	 * @param parallel true to split the rows between the available cores
+	 */
+	public void classifyBatch(int[][] columns, int numOfRows, double[] predictions, boolean parallel){
+		CompiledTree tree = compiledTree;
+		long start = metrics == null ? 0 : System.nanoTime();
+		int numOfUnseenValues;
+		if (!parallel)
+		{
+			numOfUnseenValues = tree.classifyBatch(columns, 0, numOfRows, predictions);
+		}
+		else {
+			// every block writes its own part of the predictions
+			int numOfBlocks = (numOfRows + CompiledTree.BLOCK_SIZE - 1) / CompiledTree.BLOCK_SIZE;
+			numOfUnseenValues = java.util.stream.IntStream.range(0, numOfBlocks).parallel().map(block ->
+					tree.classifyBatch(columns, block * CompiledTree.BLOCK_SIZE,
+							Math.min(numOfRows, (block + 1) * CompiledTree.BLOCK_SIZE), predictions)).sum();
+		}
+		if (metrics != null)
+		{
+			metrics.scored(numOfRows, numOfUnseenValues, System.nanoTime() - start);
+		}
 	}
 
 	@Override
 	public double classifyInstance(Instance instance) {
+		// the value of the leaf of the instance, or of the node where its value wasn't in the training data
+		CompiledTree tree = compiledTree;
+		return tree.value(classifyingNode(tree, instance));
+	}
 
-		Node currentNode = rootNode;
-		int currentAttributeIndex;
-		String instanceAttributeValue;
-		int instanceValueIndex;
-		// root height is 0
-		currentHeight = 0;
-
-		while (currentNode.children != null){
-			// gets the relevant attribute
-			currentAttributeIndex = currentNode.attributeIndex;
-			// gets the value of current instance in attribute attributeIndex
-			instanceAttributeValue = instance.stringValue(currentAttributeIndex);
-			// gets the index of the instance attribute value
-			instanceValueIndex = instance.attribute(currentAttributeIndex).indexOfValue(instanceAttributeValue);
-
-			// checks if there were instances with current attribute value in the trainingData
-			if(currentNode.children[instanceValueIndex] == null)
-			{
-				// there were no instances with current attribute value - returns current node classification
-				return currentNode.returnValue;
-			}
-			// increments the height of the tree according to this instance path in the tree
-			currentHeight++;
-			currentNode = currentNode.children[instanceValueIndex];
-		}
-		return currentNode.returnValue;
+	/**
+	 * Classifies the instance without changing the state of the tree, so a built tree
+	 * can classify instances from any number of threads at the same time.
+	 *
+	 * @param instance the instance to classify
+	 * @return the classification and the height of the instance path in the tree (root height is 0)
+	 */
+	public Prediction predict(Instance instance) {
+		CompiledTree tree = compiledTree;
+		return tree.prediction(classifyingNode(tree, instance));
 	}
 
-	private double calcChiSquare(Instances instancesSet, int attributeIndex){
+	// returns the chi-square statistic of the given (child x class) table of the split
+	private double calcChiSquare(NodeStatistics statistics, double[] valueClassCounts){
 
-		int numOfAttributeValue =instancesSet.attribute(attributeIndex).numValues();
+		int numClasses = statistics.numClasses;
+		int numOfAttributeValue = valueClassCounts.length / numClasses;
+		double numOfInstances = statistics.totalWeight;
 		double chiSquare = 0;
-
-		double[] attributesDistribution = new double[numOfAttributeValue];
-		double[] kidsRecurrenceProb = new double[numOfAttributeValue];
-
-		// fills attributesDistribution array with the probabilities of attribute's values in every attribute
-		// fills kidsRecurrenceProb array with the probabilities of 'recurrence-events' for every attribute value
-		// returns the probability of 'recurrence-events' for the instances in the father node
-		double probRecurrence = calcProb(instancesSet, attributeIndex, attributesDistribution, kidsRecurrenceProb);
 		double Df;
-		double pf;
-		double nf;
-		double E0;
-		double E1;
+		double E;
+		double difference;
+
+		// two classes (both in the node) use the binary statistic of the probability of the first class,
+		// in the arithmetic of the binary statistic, so the pruning of two-class trees doesn't change
+		if (numClasses == 2 && statistics.classCounts[0] != 0 && statistics.classCounts[1] != 0){
+			double probRecurrence = statistics.classCounts[0] / numOfInstances;
+			double kidRecurrenceProb;
+			double pf;
+			double nf;
+			double E0;
+			double E1;
+
+			for (int i = 0; i < numOfAttributeValue; i++){
+				// |Sv|
+				Df = statistics.valueCount(valueClassCounts, i);
+				// if there are instances with this attribute value
+				if (Df != 0) {
+					kidRecurrenceProb = valueClassCounts[i * numClasses] / Df;
+					// the weight of the instances with this attribute value, through |Sv|/|S|
+					Df = Df / numOfInstances * numOfInstances;
+					// the weight of the instances with this attribute value and the first class
+					pf = kidRecurrenceProb * Df;
+					// the weight of the instances with this attribute value and the second class
+					nf = (1 - kidRecurrenceProb) * Df;
+					E0 = Df * probRecurrence;
+					E1 = Df * (1 - probRecurrence);
+
+					chiSquare += (Math.pow((pf - E0), 2) / E0) + (Math.pow((nf - E1), 2) / E1);
+				}
+			}
+			return chiSquare;
+		}
 
 		for (int i = 0; i < numOfAttributeValue; i++){
+			// the weight of the instances with this attribute value
+			Df = statistics.valueCount(valueClassCounts, i);
 			// if there are instances with this attribute value
-			if(attributesDistribution[i] != 0) {
-				// the number of instances with this attribute value
-				Df = attributesDistribution[i] * instancesSet.numInstances();
-				// the number of instances with this attribute value and with 'recurrence-events 'classification
-				pf = kidsRecurrenceProb[i] * Df;
-				// the number of instances with this attribute value  and with 'no-recurrence-events 'classification
-				nf = (1 - kidsRecurrenceProb[i]) * Df;
-				E0 = Df * probRecurrence;
-				E1 = Df * (1 - probRecurrence);
-
-				chiSquare += (Math.pow((pf - E0), 2) / E0) + (Math.pow((nf - E1), 2) / E1);
+			if (Df != 0) {
+				for (int c = 0; c < numClasses; c++){
+					// a class that isn't in the node has no expected instances, and isn't counted in the degree of freedom
+					if (statistics.classCounts[c] == 0){
+						continue;
+					}
+					// the expected number of instances with this attribute value and class c
+					E = Df * (statistics.classCounts[c] / numOfInstances);
+					difference = valueClassCounts[i * numClasses + c] - E;
+					chiSquare += difference * difference / E;
+				}
 			}
 		}
 		return chiSquare;
@@ -474,13 +1615,23 @@ public class DecisionTree implements Classifier {
 			// executes printTree method for every child
 			for (int i = 0; i < currentNode.children.length; i++) {
 				if (currentNode.children[i] != null) {
-					System.out.println(getTabs(numOfTabs + 1) + "If attribute " + currentNode.attributeIndex + " = " + i);
+					System.out.println(getTabs(numOfTabs + 1) + "If attribute " + currentNode.attributeIndex + condition(currentNode, i));
 					printTree(currentNode.children[i], numOfTabs +1);
 				}
 			}
 		}
 	}
 
+	// the condition of child i of the given node
+	private String condition(Node parent, int i)
+	{
+		if (Double.isNaN(parent.threshold))
+		{
+			return " = " + i;
+		}
+		return (i == 0 ? " <= " : " > ") + parent.threshold;
+	}
+
 	// generates a string of numOfTabs tabs
 	private String getTabs (int numOfTabs)
 	{
@@ -493,10 +1644,16 @@ public class DecisionTree implements Classifier {
 		return tabs.toString();
 	}
 
+	/**
+	 * Returns the class distribution of the training instances in the node that classifies the instance
+	 * (a leaf, or the node where the value of the instance wasn't in the training data).
+	 */
 	@Override
 	public double[] distributionForInstance(Instance arg0) throws Exception {
-		// Don't change
-		return null;
+		CompiledTree tree = compiledTree;
+		double[] distribution = new double[tree.numClasses()];
+		tree.distribution(classifyingNode(tree, arg0), distribution);
+		return distribution;
 	}
 
 
@@ -0,0 +1,282 @@
+package HomeWork2;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Arrays;
+
+/**
+ * A column oriented, primitive copy of an instances set.
+ * Every attribute (except the class) is stored as a column of value indexes,
+ * in a byte column when its values fit in a byte and in a short column otherwise.
+ * A numeric attribute is binned by the quantiles of its values, and stored as a byte column of bin indexes.
+ * The class is stored as a separate column of class value indexes, and the weights as a column of doubles
+ * (only when some instance has a weight other than 1).
+ */
+class EncodedInstances {
+	// the largest number of bins of a numeric attribute
+	static final int MAX_BINS = Byte.MAX_VALUE;
+
+	// an empty copy of the encoded set, keeps the attributes and the class index
+	final Instances header;
+	final int numInstances;
+	final int numAttributes;
+	final int classIndex;
+	final int numClasses;
+	// the number of possible values of every attribute (the number of bins of a numeric attribute)
+	final int[] numValues;
+	// the upper edges of the bins of every numeric attribute (null for a nominal attribute)
+	// bin b holds the values in (binEdges[b - 1], binEdges[b]], the last bin holds the values above the last edge
+	final double[][] binEdges;
+	// for every attribute exactly one of the two columns is set (both are null for the class attribute)
+	final byte[][] byteColumns;
+	final short[][] shortColumns;
+	// the class value index of every row (NONE for a missing class, only in a set encoded by a training set)
+	final int[] classColumn;
+	// the weight of every row (null when all the weights are 1)
+	double[] weights;
+
+	private EncodedInstances(Instances header, int numInstances) {
+		this.header = header;
+		this.numInstances = numInstances;
+		this.numAttributes = header.numAttributes();
+		this.classIndex = header.classIndex();
+		this.numClasses = header.classAttribute().numValues();
+		this.numValues = new int[numAttributes];
+		this.binEdges = new double[numAttributes][];
+		this.byteColumns = new byte[numAttributes][];
+		this.shortColumns = new short[numAttributes][];
+		this.classColumn = new int[numInstances];
+	}
+
+	/**
+	 * Encodes the given instances once, so the tree can be built without any string handling.
+	 *
+	 * @param instances instances with a nominal class
+	 * @return the encoded instances
+	 */
+	static EncodedInstances encode(Instances instances) {
+		EncodedInstances encoded = new EncodedInstances(new Instances(instances, 0, 0), instances.numInstances());
+		double[] weights = new double[encoded.numInstances];
+		boolean isWeighted = false;
+		for (int i = 0; i < encoded.numInstances; i++) {
+			weights[i] = instances.instance(i).weight();
+			isWeighted |= weights[i] != 1;
+		}
+		if (isWeighted) {
+			encoded.weights = weights;
+		}
+
+		// allocates a column for every attribute according to its number of values
+		for (int a = 0; a < encoded.numAttributes; a++) {
+			Attribute attribute = instances.attribute(a);
+			encoded.numValues[a] = attribute.numValues();
+			if (a == encoded.classIndex) {
+				continue;
+			}
+			if (attribute.isNumeric()) {
+				encoded.binEdges[a] = quantileEdges(instances, a, encoded.weights);
+				encoded.numValues[a] = encoded.binEdges[a].length + 1;
+				encoded.byteColumns[a] = new byte[encoded.numInstances];
+			}
+			else if (attribute.numValues() <= Byte.MAX_VALUE) {
+				encoded.byteColumns[a] = new byte[encoded.numInstances];
+			}
+			else {
+				encoded.shortColumns[a] = new short[encoded.numInstances];
+			}
+		}
+
+		// for every instance, copies the value index of every attribute to its column
+		for (int i = 0; i < encoded.numInstances; i++) {
+			Instance currentInstance = instances.instance(i);
+			for (int a = 0; a < encoded.numAttributes; a++) {
+				if (currentInstance.isMissing(a)) {
+					throw new IllegalArgumentException("Missing value in attribute " + a + " of instance " + i);
+				}
+				// the value of a nominal attribute is the index of the value
+				int valueIndex = encoded.binEdges[a] == null ? (int) currentInstance.value(a)
+						: bin(encoded.binEdges[a], currentInstance.value(a));
+				if (a == encoded.classIndex) {
+					encoded.classColumn[i] = valueIndex;
+				}
+				else if (encoded.byteColumns[a] != null) {
+					encoded.byteColumns[a][i] = (byte) valueIndex;
+				}
+				else {
+					encoded.shortColumns[a][i] = (short) valueIndex;
+				}
+			}
+		}
+
+		return encoded;
+	}
+
+	// returns the upper edges of up to MAX_BINS bins with about the same weight of values in every bin
+	// (the weights of the instances, null when all the weights are 1)
+	private static double[] quantileEdges(Instances instances, int attributeIndex, double[] weights) {
+		double[] values = new double[instances.numInstances()];
+		double[] valueWeights = weights == null ? null : new double[values.length];
+		int numOfValues = 0;
+		for (int i = 0; i < values.length; i++) {
+			if (!instances.instance(i).isMissing(attributeIndex)) {
+				if (valueWeights != null) {
+					valueWeights[numOfValues] = weights[i];
+				}
+				values[numOfValues++] = instances.instance(i).value(attributeIndex);
+			}
+		}
+		return quantileEdges(Arrays.copyOf(values, numOfValues),
+				valueWeights == null ? null : Arrays.copyOf(valueWeights, numOfValues));
+	}
+
+	/**
+	 * @param values the values of a numeric attribute, without missing values
+	 * @param weights the weight of every value (null when all the weights are 1)
+	 * @return the upper edges of up to MAX_BINS bins with about the same weight of values in every bin
+	 */
+	static double[] quantileEdges(double[] values, double[] weights) {
+		int numOfValues = values.length;
+		double[] sorted = values.clone();
+		// the weight of every sorted value (null when all the weights are 1)
+		double[] sortedWeights = null;
+		double totalWeight = numOfValues;
+		if (weights == null) {
+			Arrays.sort(sorted);
+		}
+		else {
+			Integer[] order = new Integer[numOfValues];
+			for (int j = 0; j < numOfValues; j++) {
+				order[j] = j;
+			}
+			Arrays.sort(order, (first, second) -> Double.compare(values[first], values[second]));
+			sortedWeights = new double[numOfValues];
+			totalWeight = 0;
+			for (int j = 0; j < numOfValues; j++) {
+				sorted[j] = values[order[j]];
+				sortedWeights[j] = weights[order[j]];
+				totalWeight += sortedWeights[j];
+			}
+		}
+
+		double[] edges = new double[MAX_BINS - 1];
+		int numOfEdges = 0;
+		// the position of the current quantile, and the weight of the values up to it
+		int position = 0;
+		double cumulativeWeight = sortedWeights == null ? 1 : sortedWeights.length == 0 ? 0 : sortedWeights[0];
+		for (int b = 1; b < MAX_BINS; b++) {
+			// the b-th quantile is the first value whose cumulative weight passes b / MAX_BINS of the weight
+			// (a row of weight w counts like w rows of weight 1)
+			double quantile = (double) b * (totalWeight - 1) / MAX_BINS;
+			while (position < sorted.length - 1 && cumulativeWeight <= quantile) {
+				position++;
+				cumulativeWeight += sortedWeights == null ? 1 : sortedWeights[position];
+			}
+			// the value at the b-th quantile closes a bin, unless it is already an edge or it is the largest value
+			double edge = sorted.length == 0 ? 0 : sorted[position];
+			if (sorted.length != 0 && edge < sorted[sorted.length - 1] && (numOfEdges == 0 || edge > edges[numOfEdges - 1])) {
+				edges[numOfEdges++] = edge;
+			}
+		}
+		return Arrays.copyOf(edges, numOfEdges);
+	}
+
+	/**
+	 * Wraps columns of value indexes that were loaded without instances (see {@link MappedDataLoader}).
+	 *
+	 * @param header the attributes of the data, with a nominal class
+	 * @param binEdges the bin edges of every numeric attribute (null for a nominal attribute)
+	 * @param byteColumns the byte column of every attribute that fits in a byte, and of every numeric attribute
+	 * @param shortColumns the short column of every other attribute (null for the class attribute)
+	 * @param classColumn the class value index of every row
+	 * @param weights the weight of every row (null when all the weights are 1)
+	 * @return the encoded instances, sharing the given columns
+	 */
+	static EncodedInstances of(Instances header, double[][] binEdges, byte[][] byteColumns, short[][] shortColumns,
+			int[] classColumn, double[] weights) {
+		EncodedInstances encoded = new EncodedInstances(header, classColumn.length);
+		for (int a = 0; a < encoded.numAttributes; a++) {
+			encoded.numValues[a] = binEdges[a] == null ? header.attribute(a).numValues() : binEdges[a].length + 1;
+			encoded.binEdges[a] = binEdges[a];
+			encoded.byteColumns[a] = byteColumns[a];
+			encoded.shortColumns[a] = shortColumns[a];
+		}
+		System.arraycopy(classColumn, 0, encoded.classColumn, 0, classColumn.length);
+		encoded.weights = weights;
+		return encoded;
+	}
+
+	/**
+	 * @param edges the upper edges of the bins of a numeric attribute
+	 * @param value a value of the attribute
+	 * @return the index of the bin of the value
+	 */
+	static int bin(double[] edges, double value) {
+		int index = Arrays.binarySearch(edges, value);
+		// a value that equals an edge is in the bin that the edge closes
+		return index >= 0 ? index : -index - 1;
+	}
+
+	/**
+	 * @return an encoded set without rows, with the attributes, the numbers of values and the bin edges of this set
+	 */
+	EncodedInstances shape() {
+		EncodedInstances shape = new EncodedInstances(header, 0);
+		System.arraycopy(numValues, 0, shape.numValues, 0, numAttributes);
+		System.arraycopy(binEdges, 0, shape.binEdges, 0, numAttributes);
+		return shape;
+	}
+
+	// returns the value index of the given row in the given attribute
+	int valueIndex(int attributeIndex, int row) {
+		byte[] byteColumn = byteColumns[attributeIndex];
+		if (byteColumn != null) {
+			return byteColumn[row];
+		}
+		return shortColumns[attributeIndex][row];
+	}
+
+	/**
+	 * Copies the value indexes of the rows [from, to) to int columns, in the form that the compiled tree classifies.
+	 *
+	 * @param from the first row
+	 * @param to the row after the last row
+	 * @return the value indexes of every attribute, columns[attribute][row - from] (null for the class attribute)
+	 */
+	int[][] columns(int from, int to) {
+		int[][] columns = new int[numAttributes][];
+		for (int a = 0; a < numAttributes; a++) {
+			if (a == classIndex) {
+				continue;
+			}
+			columns[a] = new int[to - from];
+			for (int row = from; row < to; row++) {
+				columns[a][row - from] = valueIndex(a, row);
+			}
+		}
+		return columns;
+	}
+
+	/**
+	 * Copies the value indexes of some of the rows to int columns, like {@link #columns(int, int)}.
+	 *
+	 * @param rows row indexes
+	 * @param from the first position in the row indexes
+	 * @param to the position after the last position
+	 * @return the value indexes of every attribute, columns[attribute][position - from] (null for the class attribute)
+	 */
+	int[][] columns(int[] rows, int from, int to) {
+		int[][] columns = new int[numAttributes][];
+		for (int a = 0; a < numAttributes; a++) {
+			if (a == classIndex) {
+				continue;
+			}
+			columns[a] = new int[to - from];
+			for (int i = from; i < to; i++) {
+				columns[a][i - from] = valueIndex(a, rows[i]);
+			}
+		}
+		return columns;
+	}
+}
@@ -0,0 +1,159 @@
+package HomeWork2;
+
+/**
+ * Accumulates the error and the path heights of classified instances, and the confusion matrix of their classes.
+ * An accumulator is not thread safe, every thread that evaluates a tree should use its own,
+ * and the accumulators of the threads are combined by {@link #merge(EvaluationStatistics)} at the end.
+ */
+public class EvaluationStatistics {
+	private int numInstances;
+	private int numErrors;
+	private long sumOfHeights;
+	private int maxHeight = -1;
+	private final int numClasses;
+	// the number of instances of real class r that were classified as class p, at confusion[r * numClasses + p]
+	// (null when the classes aren't counted)
+	private final long[] confusion;
+
+	/**
+	 * An accumulator of the error and the path heights only.
+	 */
+	public EvaluationStatistics() {
+		this(0);
+	}
+
+	/**
+	 * An accumulator that also counts the confusion matrix of the classes.
+	 *
+	 * @param numClasses the number of classes (0 -> no confusion matrix)
+	 */
+	public EvaluationStatistics(int numClasses) {
+		this.numClasses = numClasses;
+		this.confusion = numClasses > 0 ? new long[numClasses * numClasses] : null;
+	}
+
+	/**
+	 * Adds a classified instance.
+	 *
+	 * @param prediction the prediction of the tree for the instance
+	 * @param realClass the real class value of the instance
+	 */
+	public void add(Prediction prediction, double realClass) {
+		add(prediction.value(), prediction.depth(), realClass);
+	}
+
+	/**
+	 * Adds a classified instance.
+	 *
+	 * @param predictedClass the predicted class value
+	 * @param height the depth of the classifying node
+	 * @param realClass the real class value of the instance
+	 */
+	public void add(double predictedClass, int height, double realClass) {
+		numInstances++;
+		// checks if the classification is correct
+		if (predictedClass != realClass) {
+			numErrors++;
+		}
+		sumOfHeights += height;
+		if (height > maxHeight) {
+			maxHeight = height;
+		}
+		if (confusion != null) {
+			confusion[(int) realClass * numClasses + (int) predictedClass]++;
+		}
+	}
+
+	/**
+	 * Adds the instances of another accumulator.
+	 *
+	 * @param other an accumulator with the same number of classes (an accumulator without classes adds nothing
+	 *              to the confusion matrix)
+	 */
+	public void merge(EvaluationStatistics other) {
+		numInstances += other.numInstances;
+		numErrors += other.numErrors;
+		sumOfHeights += other.sumOfHeights;
+		maxHeight = Math.max(maxHeight, other.maxHeight);
+		if (confusion != null && other.confusion != null) {
+			for (int i = 0; i < confusion.length; i++) {
+				confusion[i] += other.confusion[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the number of added instances
+	 */
+	public int numInstances() {
+		return numInstances;
+	}
+
+	/**
+	 * @return the fraction of the added instances that were misclassified
+	 */
+	public double errorRate() {
+		return (double) numErrors / numInstances;
+	}
+
+	/**
+	 * @return the largest height of a classification path (-1 if nothing was added)
+	 */
+	public int maxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 * @return the average height of the classification paths
+	 */
+	public double averageHeight() {
+		return (double) sumOfHeights / numInstances;
+	}
+
+	/**
+	 * @return the number of instances of real class r that were classified as class p at [r][p]
+	 * (null when the classes aren't counted)
+	 */
+	public long[][] confusionMatrix() {
+		if (confusion == null) {
+			return null;
+		}
+		long[][] matrix = new long[numClasses][numClasses];
+		for (int r = 0; r < numClasses; r++) {
+			System.arraycopy(confusion, r * numClasses, matrix[r], 0, numClasses);
+		}
+		return matrix;
+	}
+
+	/**
+	 * @param classIndex a class value index
+	 * @return the fraction of the instances classified as the class that are of the class
+	 * (NaN if none were, or if the classes aren't counted)
+	 */
+	public double precision(int classIndex) {
+		if (confusion == null) {
+			return Double.NaN;
+		}
+		long classified = 0;
+		for (int r = 0; r < numClasses; r++) {
+			classified += confusion[r * numClasses + classIndex];
+		}
+		return classified == 0 ? Double.NaN : (double) confusion[classIndex * numClasses + classIndex] / classified;
+	}
+
+	/**
+	 * @param classIndex a class value index
+	 * @return the fraction of the instances of the class that were classified as the class
+	 * (NaN if there were none, or if the classes aren't counted)
+	 */
+	public double recall(int classIndex) {
+		if (confusion == null) {
+			return Double.NaN;
+		}
+		long real = 0;
+		for (int p = 0; p < numClasses; p++) {
+			real += confusion[classIndex * numClasses + p];
+		}
+		return real == 0 ? Double.NaN : (double) confusion[classIndex * numClasses + classIndex] / real;
+	}
+}
@@ -41,7 +41,7 @@ public class MainHW2 {
 		double entropyError;
 		double pruneError;
 		boolean chosenImpurityMethod; // true = Gini, false = Entropy
-		double[] pValue = {1, 0.75, 0.5, 0.25, 0.05, 0.005};
+		double[] pValue = ModelSelection.P_VALUES;
 		int bestPValueIndex = 0;
 		double minError = 1;
 
@@ -49,23 +49,14 @@ public class MainHW2 {
 		Instances testingCancer = loadData("src/cancer_test.txt");
 		Instances validationCancer = loadData("src/cancer_validation.txt");
 
-		DecisionTree entropyTree = new DecisionTree();
-		DecisionTree giniTree = new DecisionTree();
+		// building the trees of all the (impurity method x p-value) combinations on the training data,
+		// and calculating their validation errors
+		ModelSelection sweep = new ModelSelection();
+		sweep.run(trainingCancer, validationCancer);
 
-		// setting Decision tree fields
-		entropyTree.isGini = false;
-		entropyTree.pValueIndex = 0; // pValue = 1 (no pruning)
-
-		giniTree.isGini = true;
-		giniTree.pValueIndex = 0; // pValue = 1 (no pruning)
-
-		// building the decision trees on the training data
-		entropyTree.buildClassifier(trainingCancer);
-		giniTree.buildClassifier(trainingCancer);
-
-		// calculating the validation errors
-		giniError = giniTree.calcAvgError(validationCancer);
-		entropyError = entropyTree.calcAvgError(validationCancer);
+		// the validation errors without pruning (pValue = 1)
+		giniError = sweep.validationStatistics(true, 0).errorRate();
+		entropyError = sweep.validationStatistics(false, 0).errorRate();
 
 		System.out.println("Validation error using Entropy: " + entropyError);
 		System.out.println("Validation error using Gini: " + giniError);
@@ -74,19 +65,16 @@ public class MainHW2 {
 		// choosing the best impurity method (Gini = true, Entropy = false)
 		chosenImpurityMethod = entropyError > giniError;
 
-		// building decision trees on the training data with pruning according to pValue
+		// the decision trees with pruning according to pValue
 		for (int i = 0; i < pValue.length; i++) {
-			DecisionTree prunedTree = new DecisionTree();
-			// setting prunedTree fields data: p-value and impurity method
-			prunedTree.pValueIndex = i;
-			prunedTree.isGini = chosenImpurityMethod;
-			prunedTree.buildClassifier(trainingCancer);
+			DecisionTree prunedTree = sweep.tree(chosenImpurityMethod, i);
 			System.out.println("Decision Tree with p_value of: " + pValue[i]);
 			System.out.println("The train error of the decision tree is: " + prunedTree.calcAvgError(trainingCancer));
-			// calculating the validation error
-			pruneError = prunedTree.calcAvgError(validationCancer);
-			System.out.println("Max height on validation data: " + prunedTree.maxHeight);
-			System.out.println("Average height on validation data: " + prunedTree.averageHeight);
+			// the validation error
+			EvaluationStatistics validationStatistics = sweep.validationStatistics(chosenImpurityMethod, i);
+			pruneError = validationStatistics.errorRate();
+			System.out.println("Max height on validation data: " + validationStatistics.maxHeight());
+			System.out.println("Average height on validation data: " + validationStatistics.averageHeight());
 			System.out.println("The validation error of the decision tree is: " + pruneError);
 			System.out.println("---------------------------------------------------------");
 			// current tree error is smaller than minimum error so far
@@ -96,13 +84,9 @@ public class MainHW2 {
 				bestPValueIndex = i;
 			}
 		}
-		// constructing a new tree with the best p-value and chosen impurity method
+		// the tree with the best p-value and chosen impurity method (already built by the sweep)
 		System.out.println("Best validation error at p_value = " + pValue[bestPValueIndex]);
-		DecisionTree bestTree = new DecisionTree();
-		// setting the bestTree p-value and impurity method
-		bestTree.isGini = chosenImpurityMethod;
-		bestTree.pValueIndex = bestPValueIndex;
-		bestTree.buildClassifier(trainingCancer);
+		DecisionTree bestTree = sweep.tree(chosenImpurityMethod, bestPValueIndex);
 		System.out.println("Test error with best tree: " + bestTree.calcAvgError(testingCancer));
 		System.out.println();
 		// printing the bestTree
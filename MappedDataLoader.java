@@ -0,0 +1,826 @@
+package HomeWork2;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+
+/**
+ * Loads an ARFF or CSV file straight into the primitive columns of {@link EncodedInstances}, without creating
+ * an instance, or a string for every value. The file is memory-mapped, and its data lines are split into chunks
+ * that are parsed in parallel. A first pass counts the rows of every chunk, so the second pass writes every chunk
+ * to its own range of the columns. A nominal value is looked up by its bytes in a dictionary of the values of its
+ * attribute, and a numeric value is parsed from its bytes (exactly like {@link Double#parseDouble(String)}).
+ * <p>
+ * The header of an ARFF file declares the attributes, and the instance weights of ARFF ({w} at the end of a line)
+ * are kept. Sparse ARFF and string or date attributes aren't supported. The first line of a CSV file has the names
+ * of the attributes, and a column is numeric if its value in the first data line is a number. The values of a nominal
+ * column of a CSV file are numbered in the order they first appear in the file. The class is the last attribute.
+ * <p>
+ * A training file gives the same encoded set as {@link EncodedInstances#encode(Instances)} of its instances.
+ * A file that is loaded with the shape of a training set is encoded by its attributes and bin edges, for scoring,
+ * and a value that the training data didn't have is missing in the columns (like a missing value).
+ */
+final class MappedDataLoader {
+	// the size of a chunk of the data lines of a file
+	static final long CHUNK_SIZE = 32L << 20;
+	// the part of the next chunk that is mapped with a chunk, for its last line (a longer line is mapped again)
+	private static final long LINE_SIZE = 64 << 10;
+	// the powers of 10 that are exact doubles
+	private static final double[] POWERS_OF_10 = new double[23];
+
+	static {
+		POWERS_OF_10[0] = 1;
+		for (int i = 1; i < POWERS_OF_10.length; i++) {
+			POWERS_OF_10[i] = POWERS_OF_10[i - 1] * 10;
+		}
+	}
+
+	private final FileChannel channel;
+	private final long size;
+	private final long chunkSize;
+	// the shape of the training set (null when the file is a training set)
+	private final EncodedInstances shape;
+	// the offset of the first data line
+	private long dataStart;
+	private String relationName;
+	private final List<String> names = new ArrayList<String>();
+	private boolean[] isNumeric;
+	// the values of every nominal attribute that has declared values (null for a numeric attribute,
+	// and for the nominal attributes of a CSV training file, whose values are collected by every chunk)
+	private Dictionary[] dictionaries;
+	private int numAttributes;
+	private int classIndex;
+
+	// the columns that the chunks are parsed to
+	private double[][] numericColumns;
+	private byte[][] byteColumns;
+	private short[][] shortColumns;
+	// the chunk value indexes of the nominal attributes without declared values
+	private int[][] chunkIdColumns;
+	private int[] classColumn;
+	private double[] weights;
+
+	// a range of the data lines of the file
+	private final class Chunk {
+		// the chunk has the lines that start in [start, end)
+		final long start;
+		final long end;
+		int firstRow;
+		int numRows;
+		boolean hasWeights;
+		// the values of every nominal attribute without declared values, in the order they appear in the chunk
+		final Dictionary[] chunkDictionaries = new Dictionary[numAttributes];
+
+		Chunk(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private MappedDataLoader(FileChannel channel, long chunkSize, EncodedInstances shape) throws IOException {
+		this.channel = channel;
+		this.size = channel.size();
+		this.chunkSize = chunkSize;
+		this.shape = shape;
+	}
+
+	/**
+	 * Loads a training set.
+	 *
+	 * @param path an ARFF or CSV file, the class is the last attribute
+	 * @return the encoded instances of the file
+	 * @throws IOException if the file can't be read
+	 */
+	static EncodedInstances load(Path path) throws IOException {
+		return load(path, null, CHUNK_SIZE);
+	}
+
+	/**
+	 * Loads a file with the attributes of a training set, encoded by the value indexes and the bins of the training set.
+	 *
+	 * @param path an ARFF or CSV file
+	 * @param shape the shape of the training set (see {@link EncodedInstances#shape()})
+	 * @return the encoded instances of the file
+	 * @throws IOException if the file can't be read
+	 */
+	static EncodedInstances load(Path path, EncodedInstances shape) throws IOException {
+		return load(path, shape, CHUNK_SIZE);
+	}
+
+	/**
+	 * @param path an ARFF or CSV file
+	 * @param shape the shape of the training set (null to load a training set)
+	 * @param chunkSize the size of the chunks that are parsed in parallel
+	 * @return the encoded instances of the file
+	 * @throws IOException if the file can't be read
+	 */
+	static EncodedInstances load(Path path, EncodedInstances shape, long chunkSize) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			MappedDataLoader loader = new MappedDataLoader(channel, chunkSize, shape);
+			loader.readHeader(path);
+			return loader.readData();
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	// maps the given length of the file from the given offset, up to the end of the file and the largest mapping
+	private ByteBuffer map(long offset, long length) {
+		try {
+			return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(Math.min(size - offset, length), Integer.MAX_VALUE));
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Can't map the data at offset " + offset, e);
+		}
+	}
+
+	// reads the attributes from the header of the file, and finds the first data line
+	private void readHeader(Path path) {
+		ByteBuffer buffer = map(0, Integer.MAX_VALUE);
+		int position = 0;
+		int limit = buffer.limit();
+		boolean isArff = false;
+		List<Attribute> attributes = new ArrayList<Attribute>();
+
+		while (position < limit) {
+			int lineStart = position;
+			int lineEnd = lineEnd(buffer, position, limit);
+			String line = new String(bytes(buffer, position, trimEnd(buffer, position, lineEnd)), StandardCharsets.UTF_8).trim();
+			position = Math.min(limit, lineEnd + 1);
+			if (line.isEmpty() || line.startsWith("%")) {
+				continue;
+			}
+			String keyword = line.split("\\s+", 2)[0].toLowerCase(Locale.ROOT);
+			if (!isArff && !keyword.startsWith("@")) {
+				// a CSV file, the first line has the names of the attributes
+				names.addAll(fields(buffer, lineStart, trimEnd(buffer, lineStart, lineEnd)));
+				break;
+			}
+			isArff = true;
+			if (keyword.equals("@relation")) {
+				relationName = unquote(line.substring(keyword.length()).trim());
+			}
+			else if (keyword.equals("@attribute")) {
+				attributes.add(parseAttribute(line.substring(keyword.length()).trim()));
+			}
+			else if (keyword.equals("@data")) {
+				break;
+			}
+		}
+		dataStart = position;
+
+		if (shape != null) {
+			// the attributes of the training set, the header of the file only has to have as many
+			numAttributes = shape.numAttributes;
+			if ((isArff ? attributes.size() : names.size()) != numAttributes) {
+				throw new IllegalArgumentException(path + " doesn't have the " + numAttributes + " attributes of the training data");
+			}
+			classIndex = shape.classIndex;
+			isNumeric = new boolean[numAttributes];
+			dictionaries = new Dictionary[numAttributes];
+			for (int a = 0; a < numAttributes; a++) {
+				isNumeric[a] = shape.binEdges[a] != null;
+				if (!isNumeric[a]) {
+					dictionaries[a] = Dictionary.of(shape.header.attribute(a));
+				}
+			}
+			return;
+		}
+
+		if (isArff) {
+			relationName = relationName == null ? path.getFileName().toString() : relationName;
+			numAttributes = attributes.size();
+			isNumeric = new boolean[numAttributes];
+			dictionaries = new Dictionary[numAttributes];
+			for (int a = 0; a < numAttributes; a++) {
+				isNumeric[a] = attributes.get(a).isNumeric();
+				if (!isNumeric[a]) {
+					dictionaries[a] = Dictionary.of(attributes.get(a));
+				}
+			}
+		}
+		else {
+			// the type of every column by its value in the first data line, the class is nominal
+			relationName = path.getFileName().toString();
+			numAttributes = names.size();
+			isNumeric = new boolean[numAttributes];
+			dictionaries = new Dictionary[numAttributes];
+			int firstLine = position;
+			while (firstLine < limit && isSkipped(buffer, firstLine, lineEnd(buffer, firstLine, limit))) {
+				firstLine = lineEnd(buffer, firstLine, limit) + 1;
+			}
+			if (firstLine < limit) {
+				List<String> fields = fields(buffer, firstLine, trimEnd(buffer, firstLine, lineEnd(buffer, firstLine, limit)));
+				for (int a = 0; a < numAttributes - 1 && a < fields.size(); a++) {
+					isNumeric[a] = isNumber(fields.get(a));
+				}
+			}
+		}
+		classIndex = numAttributes - 1;
+		if (isNumeric[classIndex]) {
+			throw new IllegalArgumentException("The class of " + path + " isn't nominal");
+		}
+	}
+
+	// parses the name and the type of an attribute of an ARFF header
+	private Attribute parseAttribute(String declaration) {
+		String name;
+		String type;
+		if (declaration.startsWith("'") || declaration.startsWith("\"")) {
+			int close = declaration.indexOf(declaration.charAt(0), 1);
+			name = declaration.substring(1, close);
+			type = declaration.substring(close + 1).trim();
+		}
+		else {
+			String[] parts = declaration.split("\\s+", 2);
+			name = parts[0];
+			type = parts.length > 1 ? parts[1].trim() : "";
+		}
+		names.add(name);
+		if (type.startsWith("{")) {
+			// the values are split like a data line, so a quoted value can have a comma
+			ByteBuffer values = ByteBuffer.wrap(type.substring(1, type.lastIndexOf('}')).getBytes(StandardCharsets.UTF_8));
+			return new Attribute(name, fields(values, 0, values.limit()));
+		}
+		String lowerType = type.toLowerCase(Locale.ROOT);
+		if (lowerType.equals("numeric") || lowerType.equals("real") || lowerType.equals("integer")) {
+			return new Attribute(name);
+		}
+		throw new IllegalArgumentException("The type of attribute " + name + " isn't supported: " + type);
+	}
+
+	// parses the data lines in chunks, and wraps the columns
+	private EncodedInstances readData() {
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		for (long start = dataStart; start < size; start += chunkSize) {
+			chunks.add(new Chunk(start, Math.min(size, start + chunkSize)));
+		}
+
+		// the first pass counts the rows of every chunk
+		chunks.parallelStream().forEach(chunk -> scan(chunk, false));
+		long numRows = 0;
+		boolean hasWeights = false;
+		for (Chunk chunk : chunks) {
+			chunk.firstRow = (int) numRows;
+			numRows += chunk.numRows;
+			hasWeights |= chunk.hasWeights;
+		}
+		if (numRows > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("More than " + Integer.MAX_VALUE + " rows");
+		}
+
+		// allocates the columns, a numeric attribute of a training set is kept as values until its bins are known
+		int rows = (int) numRows;
+		numericColumns = new double[numAttributes][];
+		byteColumns = new byte[numAttributes][];
+		shortColumns = new short[numAttributes][];
+		chunkIdColumns = new int[numAttributes][];
+		classColumn = new int[rows];
+		weights = hasWeights ? new double[rows] : null;
+		for (int a = 0; a < numAttributes; a++) {
+			if (a == classIndex) {
+				continue;
+			}
+			if (isNumeric[a]) {
+				if (shape == null) {
+					numericColumns[a] = new double[rows];
+				}
+				else {
+					byteColumns[a] = new byte[rows];
+				}
+			}
+			else if (dictionaries[a] == null) {
+				chunkIdColumns[a] = new int[rows];
+			}
+			else if (dictionaries[a].size() <= Byte.MAX_VALUE) {
+				byteColumns[a] = new byte[rows];
+			}
+			else {
+				shortColumns[a] = new short[rows];
+			}
+		}
+		if (dictionaries[classIndex] == null) {
+			// the class is numbered by every chunk like the other attributes without declared values
+			chunkIdColumns[classIndex] = classColumn;
+		}
+
+		// the second pass parses every chunk to its rows
+		chunks.parallelStream().forEach(chunk -> scan(chunk, true));
+
+		if (weights != null && Arrays.stream(weights).allMatch(weight -> weight == 1)) {
+			weights = null;
+		}
+		Instances header = shape != null ? shape.header : null;
+		if (shape == null) {
+			header = new Instances(relationName, mergeAttributes(chunks), 0);
+			header.setClassIndex(classIndex);
+		}
+
+		// bins the numeric attributes of a training set by the quantiles of their values
+		double[][] binEdges = shape != null ? shape.binEdges : new double[numAttributes][];
+		if (shape == null) {
+			IntStream.range(0, numAttributes).parallel().filter(a -> numericColumns[a] != null).forEach(a -> {
+				binEdges[a] = EncodedInstances.quantileEdges(numericColumns[a], weights);
+				byte[] column = new byte[rows];
+				for (int row = 0; row < rows; row++) {
+					column[row] = (byte) EncodedInstances.bin(binEdges[a], numericColumns[a][row]);
+				}
+				byteColumns[a] = column;
+				numericColumns[a] = null;
+			});
+		}
+
+		int[] classes = classColumn;
+		classColumn = null;
+		return EncodedInstances.of(header, binEdges, byteColumns, shortColumns, classes, weights);
+	}
+
+	// returns the attributes of the header, numbering the values of the attributes without declared values
+	// in the order of the chunks, and renumbering their columns by it
+	private ArrayList<Attribute> mergeAttributes(List<Chunk> chunks) {
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(numAttributes);
+		for (int a = 0; a < numAttributes; a++) {
+			if (isNumeric[a]) {
+				attributes.add(new Attribute(names.get(a)));
+				continue;
+			}
+			if (dictionaries[a] != null) {
+				attributes.add(new Attribute(names.get(a), dictionaries[a].values()));
+				continue;
+			}
+			// the index of every chunk value in the merged values
+			Dictionary merged = new Dictionary();
+			int[][] mergedIndexes = new int[chunks.size()][];
+			for (int c = 0; c < chunks.size(); c++) {
+				Dictionary chunkDictionary = chunks.get(c).chunkDictionaries[a];
+				int numValues = chunkDictionary == null ? 0 : chunkDictionary.size();
+				mergedIndexes[c] = new int[numValues];
+				for (int v = 0; v < numValues; v++) {
+					byte[] value = chunkDictionary.value(v);
+					mergedIndexes[c][v] = merged.intern(ByteBuffer.wrap(value), 0, value.length);
+				}
+			}
+			attributes.add(new Attribute(names.get(a), merged.values()));
+
+			int attributeIndex = a;
+			int[] ids = chunkIdColumns[a];
+			if (a == classIndex) {
+				IntStream.range(0, chunks.size()).parallel().forEach(c -> {
+					Chunk chunk = chunks.get(c);
+					for (int row = chunk.firstRow; row < chunk.firstRow + chunk.numRows; row++) {
+						ids[row] = mergedIndexes[c][ids[row]];
+					}
+				});
+			}
+			else {
+				boolean isByte = merged.size() <= Byte.MAX_VALUE;
+				byte[] byteColumn = isByte ? new byte[ids.length] : null;
+				short[] shortColumn = isByte ? null : new short[ids.length];
+				IntStream.range(0, chunks.size()).parallel().forEach(c -> {
+					Chunk chunk = chunks.get(c);
+					for (int row = chunk.firstRow; row < chunk.firstRow + chunk.numRows; row++) {
+						int valueIndex = mergedIndexes[c][ids[row]];
+						if (isByte) {
+							byteColumn[row] = (byte) valueIndex;
+						}
+						else {
+							shortColumn[row] = (short) valueIndex;
+						}
+					}
+				});
+				byteColumns[attributeIndex] = byteColumn;
+				shortColumns[attributeIndex] = shortColumn;
+			}
+			chunkIdColumns[a] = null;
+		}
+		return attributes;
+	}
+
+	// reads the data lines that start in the chunk, and counts them (first pass) or parses them (second pass)
+	private void scan(Chunk chunk, boolean isParsing) {
+		// the mapping starts a byte before a chunk that isn't the first, to see if a line starts at the chunk start
+		long mapStart = chunk.start == dataStart ? chunk.start : chunk.start - 1;
+		long mapLength = chunk.end - mapStart + LINE_SIZE;
+		ByteBuffer buffer = map(mapStart, mapLength);
+		int limit = buffer.limit();
+		int position = 0;
+		boolean isLineStart = chunk.start == dataStart;
+		int row = chunk.firstRow;
+
+		while (position < limit && mapStart + position < chunk.end) {
+			int lineEnd = lineEnd(buffer, position, limit);
+			if (lineEnd == limit && mapStart + limit < size && limit < Integer.MAX_VALUE) {
+				// the line goes on after the mapping, so the chunk is mapped again with more of the next chunk
+				mapLength *= 2;
+				buffer = map(mapStart, mapLength);
+				limit = buffer.limit();
+				continue;
+			}
+			if (!isLineStart) {
+				// the first line of a chunk belongs to the previous chunk, unless it starts at the chunk start
+				isLineStart = true;
+				position = lineEnd + 1;
+				continue;
+			}
+			int contentEnd = trimEnd(buffer, position, lineEnd);
+			if (!isSkipped(buffer, position, contentEnd)) {
+				if (isParsing) {
+					parseLine(buffer, position, contentEnd, row, chunk, mapStart);
+				}
+				else if (buffer.get(contentEnd - 1) == '}') {
+					chunk.hasWeights = true;
+				}
+				row++;
+			}
+			position = lineEnd + 1;
+		}
+		chunk.numRows = row - chunk.firstRow;
+	}
+
+	// parses a data line [from, to) of the buffer to the given row of the columns
+	private void parseLine(ByteBuffer buffer, int from, int to, int row, Chunk chunk, long mapStart) {
+		int position = from;
+		for (int a = 0; a < numAttributes; a++) {
+			position = skipSpaces(buffer, position, to);
+			if (position >= to) {
+				throw lineError("has fewer values than the " + numAttributes + " attributes", mapStart + from);
+			}
+			int valueStart;
+			int valueEnd;
+			int next;
+			byte first = buffer.get(position);
+			if (first == '\'' || first == '"') {
+				valueStart = position + 1;
+				valueEnd = indexOf(buffer, first, valueStart, to);
+				if (valueEnd < 0) {
+					throw lineError("has an unclosed quote", mapStart + from);
+				}
+				next = indexOf(buffer, (byte) ',', valueEnd + 1, to);
+			}
+			else {
+				valueStart = position;
+				next = indexOf(buffer, (byte) ',', position, to);
+				valueEnd = trimEnd(buffer, position, next < 0 ? to : next);
+			}
+			position = next < 0 ? to : next + 1;
+
+			boolean isMissing = first == '?' && valueEnd == valueStart + 1;
+			if (a == classIndex) {
+				// a set encoded by a training set can have unlabeled rows, a training set can't
+				if (isMissing) {
+					if (shape == null) {
+						throw lineError("has a missing class", mapStart + from);
+					}
+					classColumn[row] = CompiledTree.NONE;
+					continue;
+				}
+				int classValue = nominalIndex(buffer, valueStart, valueEnd, a, chunk);
+				if (classValue < 0) {
+					throw lineError("has an unknown class", mapStart + from);
+				}
+				classColumn[row] = classValue;
+				continue;
+			}
+			int valueIndex;
+			if (isMissing) {
+				if (shape == null) {
+					throw lineError("has a missing value in attribute " + a, mapStart + from);
+				}
+				valueIndex = CompiledTree.NONE;
+			}
+			else if (isNumeric[a]) {
+				double value = parseNumber(buffer, valueStart, valueEnd);
+				if (shape == null) {
+					numericColumns[a][row] = value;
+					continue;
+				}
+				valueIndex = EncodedInstances.bin(shape.binEdges[a], value);
+			}
+			else {
+				valueIndex = nominalIndex(buffer, valueStart, valueEnd, a, chunk);
+				if (valueIndex < 0 && shape == null) {
+					throw lineError("has an undeclared value in attribute " + a, mapStart + from);
+				}
+			}
+			if (chunkIdColumns[a] != null) {
+				chunkIdColumns[a][row] = valueIndex;
+			}
+			else if (byteColumns[a] != null) {
+				byteColumns[a][row] = (byte) valueIndex;
+			}
+			else {
+				shortColumns[a][row] = (short) valueIndex;
+			}
+		}
+
+		// the weight of the instance, after its values
+		position = skipSpaces(buffer, position, to);
+		if (position < to) {
+			int close = indexOf(buffer, (byte) '}', position, to);
+			if (buffer.get(position) != '{' || close < 0) {
+				throw lineError("has more values than the " + numAttributes + " attributes", mapStart + from);
+			}
+			weights[row] = parseNumber(buffer, skipSpaces(buffer, position + 1, close), trimEnd(buffer, position + 1, close));
+		}
+		else if (weights != null) {
+			weights[row] = 1;
+		}
+	}
+
+	// returns the value index of a nominal value (negative for a value that isn't declared),
+	// the value of an attribute without declared values is numbered in the dictionary of the chunk
+	private int nominalIndex(ByteBuffer buffer, int from, int to, int attributeIndex, Chunk chunk) {
+		if (dictionaries[attributeIndex] != null) {
+			return dictionaries[attributeIndex].find(buffer, from, to);
+		}
+		if (chunk.chunkDictionaries[attributeIndex] == null) {
+			chunk.chunkDictionaries[attributeIndex] = new Dictionary();
+		}
+		return chunk.chunkDictionaries[attributeIndex].intern(buffer, from, to);
+	}
+
+	private static IllegalArgumentException lineError(String message, long offset) {
+		return new IllegalArgumentException("The line at byte " + offset + " " + message);
+	}
+
+	/**
+	 * Parses a number from its bytes. A number of up to 15 significant digits with a decimal exponent of
+	 * up to 22 is a single exact multiplication or division of exact doubles, so it is rounded correctly;
+	 * any other number is parsed by {@link Double#parseDouble(String)}.
+	 *
+	 * @param buffer the bytes
+	 * @param from the first byte of the number
+	 * @param to the byte after the number
+	 * @return the value of the number
+	 */
+	static double parseNumber(ByteBuffer buffer, int from, int to) {
+		int position = from;
+		boolean isNegative = false;
+		if (position < to && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+			isNegative = buffer.get(position) == '-';
+			position++;
+		}
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+		boolean isFraction = false;
+		for (; position < to; position++) {
+			byte c = buffer.get(position);
+			if (c == '.' && !isFraction) {
+				isFraction = true;
+				continue;
+			}
+			if (c < '0' || c > '9') {
+				break;
+			}
+			hasDigits = true;
+			if (mantissa != 0 || c != '0') {
+				significantDigits++;
+			}
+			if (significantDigits <= 15) {
+				mantissa = mantissa * 10 + (c - '0');
+				if (isFraction) {
+					exponent--;
+				}
+			}
+		}
+		if (hasDigits && position < to && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+			position++;
+			boolean isNegativeExponent = false;
+			if (position < to && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+				isNegativeExponent = buffer.get(position) == '-';
+				position++;
+			}
+			int exponentDigits = 0;
+			int explicitExponent = 0;
+			for (; position < to && buffer.get(position) >= '0' && buffer.get(position) <= '9'; position++) {
+				explicitExponent = Math.min(100000, explicitExponent * 10 + (buffer.get(position) - '0'));
+				exponentDigits++;
+			}
+			hasDigits = exponentDigits > 0;
+			exponent += isNegativeExponent ? -explicitExponent : explicitExponent;
+		}
+		if (!hasDigits || position != to || significantDigits > 15 || Math.abs(exponent) >= POWERS_OF_10.length) {
+			return Double.parseDouble(new String(bytes(buffer, from, to), StandardCharsets.ISO_8859_1));
+		}
+		double value = exponent >= 0 ? mantissa * POWERS_OF_10[exponent] : mantissa / POWERS_OF_10[-exponent];
+		return isNegative ? -value : value;
+	}
+
+	// returns the values of the line [from, to) of the buffer, split and unquoted like parseLine splits them
+	// (a comma in a quoted value doesn't split it)
+	private static List<String> fields(ByteBuffer buffer, int from, int to) {
+		List<String> fields = new ArrayList<String>();
+		int position = from;
+		while (true) {
+			position = skipSpaces(buffer, position, to);
+			int valueStart;
+			int valueEnd;
+			int next;
+			byte first = position < to ? buffer.get(position) : 0;
+			if (first == '\'' || first == '"') {
+				valueStart = position + 1;
+				valueEnd = indexOf(buffer, first, valueStart, to);
+				// an unclosed quote is reported when the line is parsed
+				valueEnd = valueEnd < 0 ? to : valueEnd;
+				next = indexOf(buffer, (byte) ',', Math.min(to, valueEnd + 1), to);
+			}
+			else {
+				valueStart = position;
+				next = indexOf(buffer, (byte) ',', position, to);
+				valueEnd = trimEnd(buffer, position, next < 0 ? to : next);
+			}
+			fields.add(new String(bytes(buffer, valueStart, valueEnd), StandardCharsets.UTF_8));
+			if (next < 0) {
+				return fields;
+			}
+			position = next + 1;
+		}
+	}
+
+	// returns true if the text is a number
+	private static boolean isNumber(String text) {
+		try {
+			Double.parseDouble(text);
+			return true;
+		}
+		catch (NumberFormatException e) {
+			return false;
+		}
+	}
+
+	private static String unquote(String text) {
+		if (text.length() >= 2 && (text.charAt(0) == '\'' || text.charAt(0) == '"')
+				&& text.charAt(text.length() - 1) == text.charAt(0)) {
+			return text.substring(1, text.length() - 1);
+		}
+		return text;
+	}
+
+	// returns true for an empty line or a comment line [from, to)
+	private static boolean isSkipped(ByteBuffer buffer, int from, int to) {
+		int position = skipSpaces(buffer, from, to);
+		return position >= to || buffer.get(position) == '%';
+	}
+
+	// returns the position of the line feed that ends the line starting at the given position (the limit at the end)
+	private static int lineEnd(ByteBuffer buffer, int from, int limit) {
+		int end = indexOf(buffer, (byte) '\n', from, limit);
+		return end < 0 ? limit : end;
+	}
+
+	// returns the first position of the byte in [from, to) (-1 if it isn't there)
+	private static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+		for (int position = from; position < to; position++) {
+			if (buffer.get(position) == value) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private static int skipSpaces(ByteBuffer buffer, int from, int to) {
+		int position = from;
+		while (position < to && (buffer.get(position) == ' ' || buffer.get(position) == '\t')) {
+			position++;
+		}
+		return position;
+	}
+
+	// returns the end of [from, to) without trailing spaces and carriage returns
+	private static int trimEnd(ByteBuffer buffer, int from, int to) {
+		int end = to;
+		while (end > from && (buffer.get(end - 1) == ' ' || buffer.get(end - 1) == '\t' || buffer.get(end - 1) == '\r')) {
+			end--;
+		}
+		return end;
+	}
+
+	private static byte[] bytes(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = buffer.get(from + i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * The values of a nominal attribute, numbered in the order they were added, found by their bytes
+	 * in an open addressing hash table without creating a string.
+	 */
+	static final class Dictionary {
+		private byte[][] values = new byte[8][];
+		private int size;
+		// the index + 1 of the value of every slot (0 for an empty slot), the number of slots is a power of 2
+		private int[] slots = new int[16];
+
+		// returns the dictionary of the values of a nominal attribute
+		static Dictionary of(Attribute attribute) {
+			Dictionary dictionary = new Dictionary();
+			for (int v = 0; v < attribute.numValues(); v++) {
+				byte[] value = attribute.value(v).getBytes(StandardCharsets.UTF_8);
+				dictionary.intern(ByteBuffer.wrap(value), 0, value.length);
+			}
+			return dictionary;
+		}
+
+		/**
+		 * @return the index of the value [from, to) of the buffer (-1 if it isn't in the dictionary)
+		 */
+		int find(ByteBuffer buffer, int from, int to) {
+			int mask = slots.length - 1;
+			for (int slot = hash(buffer, from, to) & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+				if (equals(values[slots[slot] - 1], buffer, from, to)) {
+					return slots[slot] - 1;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @return the index of the value [from, to) of the buffer, added to the dictionary if it isn't there
+		 */
+		int intern(ByteBuffer buffer, int from, int to) {
+			int index = find(buffer, from, to);
+			if (index >= 0) {
+				return index;
+			}
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+			}
+			values[size] = bytes(buffer, from, to);
+			size++;
+			if (size * 2 > slots.length) {
+				slots = new int[slots.length * 2];
+				for (int v = 0; v < size; v++) {
+					insert(v);
+				}
+			}
+			else {
+				insert(size - 1);
+			}
+			return size - 1;
+		}
+
+		private void insert(int index) {
+			int mask = slots.length - 1;
+			int slot = hash(ByteBuffer.wrap(values[index]), 0, values[index].length) & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = index + 1;
+		}
+
+		int size() {
+			return size;
+		}
+
+		byte[] value(int index) {
+			return values[index];
+		}
+
+		// returns the values as strings, in the order of their indexes
+		List<String> values() {
+			List<String> strings = new ArrayList<String>(size);
+			for (int v = 0; v < size; v++) {
+				strings.add(new String(values[v], StandardCharsets.UTF_8));
+			}
+			return strings;
+		}
+
+		// the FNV-1a hash of the bytes [from, to)
+		private static int hash(ByteBuffer buffer, int from, int to) {
+			int hash = 0x811C9DC5;
+			for (int position = from; position < to; position++) {
+				hash = (hash ^ buffer.get(position)) * 0x01000193;
+			}
+			return hash ^ (hash >>> 16);
+		}
+
+		private static boolean equals(byte[] value, ByteBuffer buffer, int from, int to) {
+			if (value.length != to - from) {
+				return false;
+			}
+			for (int i = 0; i < value.length; i++) {
+				if (value[i] != buffer.get(from + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,240 @@
+package HomeWork2;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A tree that is scored straight from a memory mapped model file (see {@link ModelFile}).
+ * Opening a model maps the file and reads only its attributes dictionary, the nodes are read
+ * from the page cache while scoring. Files larger than 2GB are mapped in several segments.
+ */
+public final class MappedTree implements ScoringTree {
+	// the size of a mapped segment, a multiple of 8 so no int or double crosses two segments
+	private static final int SEGMENT_BITS = 30;
+	private static final long SEGMENT_MASK = (1L << SEGMENT_BITS) - 1;
+
+	private final MappedByteBuffer[] segments;
+	private final int numNodes;
+	// the file positions of the arrays
+	private final long attributeOffset;
+	private final long childOffsetOffset;
+	private final long depthOffset;
+	private final long thresholdBinOffset;
+	private final long childrenOffset;
+	private final long leafValueOffset;
+	private final long thresholdOffset;
+	private final long distributionOffset;
+	private final int numClasses;
+	// the attributes of the training data
+	private final Instances header;
+	// the bin edges of every numeric attribute (null for a nominal attribute)
+	private final double[][] binEdges;
+
+	private MappedTree(MappedByteBuffer[] segments, FileChannel channel) throws IOException {
+		this.segments = segments;
+		if (getInt(0) != ModelFile.MAGIC) {
+			throw new IOException("Not a decision tree model file");
+		}
+		if (getInt(4) != ModelFile.VERSION) {
+			throw new IOException("Unsupported model file version " + getInt(4));
+		}
+		this.numNodes = getInt(8);
+		this.attributeOffset = ModelFile.HEADER_SIZE;
+		this.childOffsetOffset = attributeOffset + 4L * numNodes;
+		this.depthOffset = childOffsetOffset + 4L * numNodes;
+		this.thresholdBinOffset = depthOffset + 4L * numNodes;
+		this.childrenOffset = thresholdBinOffset + 4L * numNodes;
+		this.leafValueOffset = getLong(16);
+		this.thresholdOffset = leafValueOffset + 8L * numNodes;
+		List<double[]> edges = new ArrayList<double[]>();
+		this.header = ModelFile.readHeader(mapDictionary(channel, getLong(24)), edges);
+		this.binEdges = edges.toArray(new double[0][]);
+		this.numClasses = header.classAttribute().numValues();
+		this.distributionOffset = thresholdOffset + 8L * numNodes;
+	}
+
+	/**
+	 * Maps a model file for scoring.
+	 *
+	 * @param path a model file written by {@link DecisionTree#saveModel(Path)}
+	 * @return the mapped tree
+	 * @throws IOException if the file can't be read or isn't a model file
+	 */
+	public static MappedTree open(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			MappedByteBuffer[] segments = new MappedByteBuffer[(int) ((size + SEGMENT_MASK) >>> SEGMENT_BITS)];
+			for (int s = 0; s < segments.length; s++) {
+				long position = (long) s << SEGMENT_BITS;
+				segments[s] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(SEGMENT_MASK + 1, size - position));
+			}
+			// the mapping stays valid after the channel is closed
+			return new MappedTree(segments, channel);
+		}
+	}
+
+	/**
+	 * @return an empty instances set with the attributes and the class index of the training data
+	 */
+	public Instances header() {
+		return new Instances(header, 0, 0);
+	}
+
+	private int getInt(long position) {
+		return segments[(int) (position >>> SEGMENT_BITS)].getInt((int) (position & SEGMENT_MASK));
+	}
+
+	private long getLong(long position) {
+		return segments[(int) (position >>> SEGMENT_BITS)].getLong((int) (position & SEGMENT_MASK));
+	}
+
+	private double getDouble(long position) {
+		return segments[(int) (position >>> SEGMENT_BITS)].getDouble((int) (position & SEGMENT_MASK));
+	}
+
+	// maps the dictionary, from its offset to the end of the file, as a buffer of its own,
+	// since it can start in one segment and end in the next one
+	private static ByteBuffer mapDictionary(FileChannel channel, long offset) throws IOException {
+		long size = channel.size() - offset;
+		if (offset < ModelFile.HEADER_SIZE || size < 0 || size > Integer.MAX_VALUE) {
+			throw new IOException("Invalid dictionary offset " + offset);
+		}
+		return channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+	}
+
+	private int attribute(int node) {
+		return getInt(attributeOffset + 4L * node);
+	}
+
+	private int child(int node, int childIndex) {
+		return getInt(childrenOffset + 4L * ((long) getInt(childOffsetOffset + 4L * node) + childIndex));
+	}
+
+	// returns the child of a value: the child of a nominal value index,
+	// and the first or the second child for a numeric value up to or above the threshold
+	private int child(int node, double value) {
+		double threshold = getDouble(thresholdOffset + 8L * node);
+		if (Double.isNaN(threshold)) {
+			return child(node, (int) value);
+		}
+		return child(node, value <= threshold ? 0 : 1);
+	}
+
+	// returns the child of a value index (the bin of a numeric value)
+	private int childOfValueIndex(int node, int valueIndex) {
+		if (Double.isNaN(getDouble(thresholdOffset + 8L * node))) {
+			return child(node, valueIndex);
+		}
+		return child(node, valueIndex <= getInt(thresholdBinOffset + 4L * node) ? 0 : 1);
+	}
+
+	@Override
+	public int classifyingNode(double[] values) {
+		int node = 0;
+		int attribute;
+		int child;
+
+		while ((attribute = attribute(node)) != CompiledTree.NONE) {
+			// a missing value, and a nominal value that isn't a value index,
+			// are classified like a value that wasn't in the training data
+			if (Double.isNaN(values[attribute])
+					|| binEdges[attribute] == null && valueIndex(attribute, values[attribute]) == CompiledTree.NONE) {
+				return node;
+			}
+			child = child(node, values[attribute]);
+			if (child == CompiledTree.NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	@Override
+	public int classifyingNode(int[] valueIndexes) {
+		int node = 0;
+		int attribute;
+		int child;
+
+		while ((attribute = attribute(node)) != CompiledTree.NONE) {
+			if (valueIndexes[attribute] < 0) {
+				return node;
+			}
+			child = childOfValueIndex(node, valueIndexes[attribute]);
+			if (child == CompiledTree.NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	@Override
+	public int classifyingNode(Instance instance) {
+		int node = 0;
+		int attribute;
+		int child;
+
+		while ((attribute = attribute(node)) != CompiledTree.NONE) {
+			if (instance.isMissing(attribute)) {
+				return node;
+			}
+			child = child(node, instance.value(attribute));
+			if (child == CompiledTree.NONE) {
+				return node;
+			}
+			node = child;
+		}
+		return node;
+	}
+
+	@Override
+	public int valueIndex(int attributeIndex, double value) {
+		if (binEdges[attributeIndex] == null) {
+			int numValues = header.attribute(attributeIndex).numValues();
+			return value >= 0 && value < numValues && value == (int) value ? (int) value : CompiledTree.NONE;
+		}
+		return EncodedInstances.bin(binEdges[attributeIndex], value);
+	}
+
+	@Override
+	public double value(int node) {
+		return getDouble(leafValueOffset + 8L * node);
+	}
+
+	@Override
+	public void distribution(int node, double[] distribution) {
+		for (int c = 0; c < numClasses; c++) {
+			distribution[c] = getDouble(distributionOffset + 8L * ((long) node * numClasses + c));
+		}
+	}
+
+	@Override
+	public int numClasses() {
+		return numClasses;
+	}
+
+	@Override
+	public int numAttributes() {
+		return header.numAttributes();
+	}
+
+	@Override
+	public int depth(int node) {
+		return getInt(depthOffset + 4L * node);
+	}
+
+	@Override
+	public int numNodes() {
+		return numNodes;
+	}
+}
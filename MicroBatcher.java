@@ -0,0 +1,197 @@
+package HomeWork2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the concurrent scoring requests of a model into batches. A single thread takes the waiting
+ * requests off a queue, up to maxBatchRows rows, and every batch is scored by one traversal of the
+ * tree over columns of value indexes (see {@link ScoringTree#classifyingNodes(int[][], int, int, int[])}).
+ * The batches are scored on the given executor, so several batches can be scored at the same time.
+ * Under load the queue fills while a batch is taken, so the batches grow with the load without
+ * delaying a request when the server is idle (unless maxDelayNanos is set).
+ */
+class MicroBatcher {
+
+	/**
+	 * The result of a request: the predictions and the version of the model that scored them.
+	 */
+	static final class Result {
+		final double[] predictions;
+		final long version;
+
+		Result(double[] predictions, long version) {
+			this.predictions = predictions;
+			this.version = version;
+		}
+	}
+
+	// a request that waits in the queue
+	private static final class Request {
+		final double[][] rows;
+		final CompletableFuture<Result> result = new CompletableFuture<Result>();
+
+		Request(double[][] rows) {
+			this.rows = rows;
+		}
+	}
+
+	// a request that stops the batching thread
+	private static final Request STOP = new Request(new double[0][]);
+
+	private final ModelRegistry registry;
+	private final String modelName;
+	private final Executor executor;
+	// the largest number of rows of a batch (a single larger request is a batch of its own)
+	private final int maxBatchRows;
+	// the longest time that the first request of a batch waits for more requests (0 -> no waiting)
+	private final long maxDelayNanos;
+	private final BlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+
+	/**
+	 * @param registry the models
+	 * @param modelName the name of the model that the requests are scored by
+	 * @param executor runs the batching thread and scores the batches
+	 * @param maxBatchRows the largest number of rows of a batch
+	 * @param maxDelayNanos the longest time that a request waits for more requests to join its batch
+	 */
+	MicroBatcher(ModelRegistry registry, String modelName, Executor executor, int maxBatchRows, long maxDelayNanos) {
+		this.registry = registry;
+		this.modelName = modelName;
+		this.executor = executor;
+		this.maxBatchRows = maxBatchRows;
+		this.maxDelayNanos = maxDelayNanos;
+		executor.execute(this::collectBatches);
+	}
+
+	/**
+	 * Adds rows to the next batch.
+	 *
+	 * @param rows the value of every attribute of every row, nominal values as value indexes (NaN for a missing value)
+	 * @return the predictions of the rows, completed when their batch is scored
+	 */
+	CompletableFuture<Result> score(double[][] rows) {
+		Request request = new Request(rows);
+		queue.add(request);
+		return request.result;
+	}
+
+	/**
+	 * Stops collecting batches, after the requests that already wait are scored.
+	 */
+	void stop() {
+		queue.add(STOP);
+	}
+
+	// takes the waiting requests off the queue in batches, until it is stopped
+	private void collectBatches() {
+		Request pending = null;
+		try {
+			while (true) {
+				Request first = pending != null ? pending : queue.take();
+				pending = null;
+				if (first == STOP) {
+					return;
+				}
+				List<Request> batch = new ArrayList<Request>();
+				batch.add(first);
+				int numOfRows = first.rows.length;
+				long deadline = System.nanoTime() + maxDelayNanos;
+				while (numOfRows < maxBatchRows) {
+					long remaining = deadline - System.nanoTime();
+					Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+					if (next == null) {
+						break;
+					}
+					// a request that doesn't fit (or the stop) starts the next batch
+					if (next == STOP || numOfRows + next.rows.length > maxBatchRows) {
+						pending = next;
+						break;
+					}
+					batch.add(next);
+					numOfRows += next.rows.length;
+				}
+				int batchRows = numOfRows;
+				executor.execute(() -> scoreBatch(batch, batchRows));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// scores all the rows of the batch by a single version of the model,
+	// and fails the requests of the batch that weren't answered if the scoring fails
+	private void scoreBatch(List<Request> batch, int numOfRows) {
+		try {
+			scoreRequests(batch, numOfRows);
+		}
+		catch (RuntimeException | Error e) {
+			for (Request request : batch) {
+				request.result.completeExceptionally(e);
+			}
+			throw e;
+		}
+	}
+
+	private void scoreRequests(List<Request> batch, int numOfRows) {
+		ModelRegistry.Model model = registry.model(modelName);
+		if (model == null) {
+			for (Request request : batch) {
+				request.result.completeExceptionally(new IllegalArgumentException("No model " + modelName));
+			}
+			return;
+		}
+		ScoringTree tree = model.tree;
+		int numAttributes = tree.numAttributes();
+
+		// copies the rows to columns of value indexes, a request with a wrong number of values fails alone
+		int[][] columns = new int[numAttributes][numOfRows];
+		boolean[] isValid = new boolean[batch.size()];
+		int row = 0;
+		for (int r = 0; r < batch.size(); r++) {
+			Request request = batch.get(r);
+			isValid[r] = true;
+			for (double[] values : request.rows) {
+				if (values.length != numAttributes) {
+					isValid[r] = false;
+					break;
+				}
+			}
+			if (!isValid[r]) {
+				request.result.completeExceptionally(new IllegalArgumentException("A row of model " + modelName
+						+ " has " + numAttributes + " values"));
+				continue;
+			}
+			for (double[] values : request.rows) {
+				// a nominal value that isn't a value index is NONE, like a missing value
+				for (int a = 0; a < numAttributes; a++) {
+					columns[a][row] = Double.isNaN(values[a]) ? CompiledTree.NONE : tree.valueIndex(a, values[a]);
+				}
+				row++;
+			}
+		}
+
+		int[] nodes = new int[row];
+		tree.classifyingNodes(columns, 0, row, nodes);
+
+		// gives every request the predictions of its own rows
+		row = 0;
+		for (int r = 0; r < batch.size(); r++) {
+			if (!isValid[r]) {
+				continue;
+			}
+			Request request = batch.get(r);
+			double[] predictions = new double[request.rows.length];
+			for (int i = 0; i < predictions.length; i++) {
+				predictions[i] = tree.value(nodes[row++]);
+			}
+			request.result.complete(new Result(predictions, model.version));
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package HomeWork2;
+
+import weka.core.Attribute;
+import weka.core.Instances;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The binary model file format. All the numbers are big endian.
+ *
+ * <pre>
+ * header (32 bytes): int magic, int version, int numNodes, int numChildSlots,
+ *                    long leafValueOffset, long dictionaryOffset
+ * int[numNodes] attribute, int[numNodes] childOffset, int[numNodes] depth, int[numNodes] thresholdBin,
+ * int[numChildSlots] children
+ * padding to a multiple of 8 bytes
+ * double[numNodes] leafValue, double[numNodes] threshold (NaN for a node that doesn't split a numeric attribute),
+ * double[numNodes * numClasses] distribution (the class distribution of every node)
+ * dictionary: relation name, int numAttributes, int classIndex, and for every attribute:
+ *             name, int numValues and the nominal values, or -1 for a numeric attribute,
+ *             int numBinEdges and the bin edges (doubles) of the attribute
+ * </pre>
+ *
+ * Strings are stored as an int length followed by the UTF-8 bytes.
+ * Every int is 4 byte aligned and every double is 8 byte aligned, so the arrays can be read
+ * in place from a memory mapped file.
+ */
+final class ModelFile {
+	static final int MAGIC = 0x44545245;
+	// version 2 added the thresholds of the numeric splits and the bin edges, version 3 the class distributions
+	static final int VERSION = 3;
+	static final int HEADER_SIZE = 32;
+
+	private ModelFile() {
+	}
+
+	/**
+	 * Writes the tree and the attributes it was trained on to a model file.
+	 *
+	 * @param tree a compiled tree
+	 * @param header the attributes of the training data
+	 * @param path the model file
+	 * @throws IOException if the file can't be written
+	 */
+	static void write(CompiledTree tree, Instances header, Path path) throws IOException {
+		int numNodes = tree.numNodes();
+		int numChildSlots = tree.children.length;
+		long intsEnd = HEADER_SIZE + 4L * (4L * numNodes + numChildSlots);
+		long leafValueOffset = (intsEnd + 7) & ~7L;
+		// the thresholds and the distributions follow the leaf values
+		long dictionaryOffset = leafValueOffset + 8L * (2L * numNodes + tree.distribution.length);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16))) {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(numNodes);
+			out.writeInt(numChildSlots);
+			out.writeLong(leafValueOffset);
+			out.writeLong(dictionaryOffset);
+
+			writeInts(out, tree.attribute);
+			writeInts(out, tree.childOffset);
+			writeInts(out, tree.depth);
+			writeInts(out, tree.thresholdBin);
+			writeInts(out, tree.children);
+			for (long position = intsEnd; position < leafValueOffset; position++) {
+				out.writeByte(0);
+			}
+			writeDoubles(out, tree.leafValue);
+			writeDoubles(out, tree.threshold);
+			writeDoubles(out, tree.distribution);
+
+			writeString(out, header.relationName());
+			out.writeInt(header.numAttributes());
+			out.writeInt(header.classIndex());
+			for (int a = 0; a < header.numAttributes(); a++) {
+				Attribute attribute = header.attribute(a);
+				writeString(out, attribute.name());
+				if (!attribute.isNominal()) {
+					out.writeInt(-1);
+					double[] binEdges = tree.binEdges[a] == null ? new double[0] : tree.binEdges[a];
+					out.writeInt(binEdges.length);
+					writeDoubles(out, binEdges);
+					continue;
+				}
+				out.writeInt(attribute.numValues());
+				for (int v = 0; v < attribute.numValues(); v++) {
+					writeString(out, attribute.value(v));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads the attributes that a model was trained on.
+	 *
+	 * @param dictionary the dictionary section of a model file
+	 * @param binEdges gets the bin edges of every attribute (null for a nominal attribute)
+	 * @return an empty instances set with the attributes and the class index of the training data
+	 */
+	static Instances readHeader(ByteBuffer dictionary, List<double[]> binEdges) {
+		String relationName = readString(dictionary);
+		int numAttributes = dictionary.getInt();
+		int classIndex = dictionary.getInt();
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(numAttributes);
+
+		for (int a = 0; a < numAttributes; a++) {
+			String name = readString(dictionary);
+			int numValues = dictionary.getInt();
+			if (numValues < 0) {
+				attributes.add(new Attribute(name));
+				double[] edges = new double[dictionary.getInt()];
+				for (int b = 0; b < edges.length; b++) {
+					edges[b] = dictionary.getDouble();
+				}
+				binEdges.add(edges);
+				continue;
+			}
+			binEdges.add(null);
+			List<String> values = new ArrayList<String>(numValues);
+			for (int v = 0; v < numValues; v++) {
+				values.add(readString(dictionary));
+			}
+			attributes.add(new Attribute(name, values));
+		}
+
+		Instances header = new Instances(relationName, attributes, 0);
+		header.setClassIndex(classIndex);
+		return header;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+		for (int value : values) {
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+		for (double value : values) {
+			out.writeDouble(value);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,83 @@
+package HomeWork2;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The models of a scoring server by name. Every model is an immutable version of a trained tree,
+ * and registering a tree under a name replaces the version of the name atomically. A request reads
+ * the current version once and is scored by it to the end, so a model is swapped without pausing or
+ * failing the requests in flight, and the old version is released when its last request finishes.
+ */
+public class ModelRegistry {
+
+	/**
+	 * A version of a model.
+	 */
+	public static final class Model {
+		public final String name;
+		// the versions of a name are numbered from 1
+		public final long version;
+		public final ScoringTree tree;
+
+		private Model(String name, long version, ScoringTree tree) {
+			this.name = name;
+			this.version = version;
+			this.tree = tree;
+		}
+	}
+
+	// the current version of every model
+	private final ConcurrentHashMap<String, Model> models = new ConcurrentHashMap<String, Model>();
+
+	/**
+	 * Registers a tree as the next version of the named model.
+	 *
+	 * @param name the name of the model
+	 * @param tree the trained tree
+	 * @return the new version of the model
+	 */
+	public Model register(String name, ScoringTree tree) {
+		return models.compute(name, (modelName, current) -> new Model(modelName, current == null ? 1 : current.version + 1, tree));
+	}
+
+	/**
+	 * Maps a model file and registers it as the next version of the named model.
+	 *
+	 * @param name the name of the model
+	 * @param path a model file written by {@link DecisionTree#saveModel(Path)}
+	 * @return the new version of the model
+	 * @throws IOException if the file can't be read
+	 */
+	public Model load(String name, Path path) throws IOException {
+		return register(name, MappedTree.open(path));
+	}
+
+	/**
+	 * @param name the name of a model
+	 * @return the current version of the model (null if there is no such model)
+	 */
+	public Model model(String name) {
+		return models.get(name);
+	}
+
+	/**
+	 * Removes a model, the requests that already read it are still scored by it.
+	 *
+	 * @param name the name of a model
+	 * @return the last version of the model (null if there was no such model)
+	 */
+	public Model remove(String name) {
+		return models.remove(name);
+	}
+
+	/**
+	 * @return the current versions of all the models
+	 */
+	public List<Model> models() {
+		return new ArrayList<Model>(models.values());
+	}
+}
@@ -0,0 +1,151 @@
+package HomeWork2;
+
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a decision tree for every (impurity measure x p-value) combination on a validation set.
+ * The training data is encoded once, and one tree without pruning is built for every impurity measure.
+ * Every p-value variant is derived from that tree by {@link DecisionTree#pruned(double)}, since pruning by
+ * chi-square only cuts branches, so the whole sweep costs about two builds. The builds run concurrently,
+ * and so do the derivations and the evaluations of the variants.
+ * A variant is the tree that a build with its p-value gives, unless the trees have a node budget
+ * (see {@link DecisionTree#pruned(int)}).
+ * The critical values of every p-value are computed once, and shared by all the variants.
+ */
+public class ModelSelection {
+	// the p-values of the p-value indexes
+	public static final double[] P_VALUES = ChiSquareCriticalValues.P_VALUES;
+
+	// the p-values of the sweep
+	private final double[] pValues;
+	// the tree and its validation statistics of every combination, at [isGini ? 1 : 0][pValueIndex]
+	private final DecisionTree[][] trees;
+	private final EvaluationStatistics[][] validationStatistics;
+	// the number of threads of the sweep
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+	// gets the metrics of building, pruning and evaluating the trees (null -> nothing is measured)
+	protected TreeMetricsListener metrics;
+
+	/**
+	 * A sweep over the p-values of {@link #P_VALUES}.
+	 */
+	public ModelSelection() {
+		this(P_VALUES);
+	}
+
+	/**
+	 * A sweep over any p-values, for a finer grained choice of the pruning.
+	 *
+	 * @param pValues p-values in (0, 1], the p-value indexes of the sweep are indexes of this array
+	 */
+	public ModelSelection(double[] pValues) {
+		this.pValues = pValues.clone();
+		for (double pValue : this.pValues) {
+			// fails for a p-value that isn't in (0, 1]
+			ChiSquareCriticalValues.of(pValue);
+		}
+		trees = new DecisionTree[2][pValues.length];
+		validationStatistics = new EvaluationStatistics[2][pValues.length];
+	}
+
+	/**
+	 * Builds and evaluates the trees of all the combinations.
+	 *
+	 * @param trainingSet the training data
+	 * @param validationSet the data that the trees are evaluated on
+	 * @throws Exception if a tree can't be built
+	 */
+	public void run(Instances trainingSet, Instances validationSet) throws Exception {
+		EncodedInstances encoded = EncodedInstances.encode(trainingSet);
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+
+		try {
+			// builds the tree without pruning of every impurity measure, splitting the threads between the builds
+			List<Future<DecisionTree>> builds = new ArrayList<Future<DecisionTree>>();
+			for (int g = 0; g < 2; g++) {
+				boolean isGini = g == 1;
+				builds.add(pool.submit(() -> {
+					DecisionTree tree = new DecisionTree();
+					tree.isGini = isGini;
+					tree.pValueIndex = 0;
+					tree.metrics = metrics;
+					tree.numThreads = Math.max(1, numThreads / 2);
+					int[] allRows = new int[encoded.numInstances];
+					for (int i = 0; i < allRows.length; i++) {
+						allRows[i] = i;
+					}
+					tree.buildClassifier(encoded, allRows);
+					return tree;
+				}));
+			}
+
+			// derives and evaluates every p-value variant
+			List<Callable<Void>> evaluations = new ArrayList<Callable<Void>>();
+			for (int g = 0; g < 2; g++) {
+				DecisionTree unprunedTree = builds.get(g).get();
+				for (int p = 0; p < pValues.length; p++) {
+					int impurityIndex = g;
+					int pValueIndex = p;
+					evaluations.add(() -> {
+						DecisionTree tree = pValues[pValueIndex] == 1 ? unprunedTree : unprunedTree.pruned(pValues[pValueIndex]);
+						// the variants are evaluated in parallel, so every evaluation is sequential
+						tree.numThreads = 1;
+						validationStatistics[impurityIndex][pValueIndex] = tree.evaluate(validationSet);
+						trees[impurityIndex][pValueIndex] = tree;
+						return null;
+					});
+				}
+			}
+			for (Future<Void> evaluation : pool.invokeAll(evaluations)) {
+				evaluation.get();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @param isGini true for the Gini impurity measure, false for entropy
+	 * @param pValueIndex an index of the p-values of the sweep
+	 * @return the tree of the combination
+	 */
+	public DecisionTree tree(boolean isGini, int pValueIndex) {
+		return trees[isGini ? 1 : 0][pValueIndex];
+	}
+
+	/**
+	 * @param isGini true for the Gini impurity measure, false for entropy
+	 * @param pValueIndex an index of the p-values of the sweep
+	 * @return the validation statistics of the tree of the combination
+	 */
+	public EvaluationStatistics validationStatistics(boolean isGini, int pValueIndex) {
+		return validationStatistics[isGini ? 1 : 0][pValueIndex];
+	}
+
+	/**
+	 * @return the tree with the lowest validation error (on a tie entropy comes first, then the lower p-value index)
+	 */
+	public DecisionTree bestTree() {
+		DecisionTree bestTree = null;
+		double minError = Double.POSITIVE_INFINITY;
+
+		for (int g = 0; g < 2; g++) {
+			for (int p = 0; p < pValues.length; p++) {
+				double error = validationStatistics[g][p].errorRate();
+				if (error < minError) {
+					minError = error;
+					bestTree = trees[g][p];
+				}
+			}
+		}
+		return bestTree;
+	}
+}
@@ -0,0 +1,24 @@
+package HomeWork2;
+
+class Node {
+	Node[] children;
+	Node parent;
+	int attributeIndex;
+	double returnValue;
+	// the depth of the node (the root depth is 0)
+	int depth;
+	// the weight of the training instances of every class in the node
+	double[] classCounts;
+	// the seed of the random attribute subset of the node (see DecisionTree.numRandomAttributes)
+	long seed;
+	// the chi-square statistic of the split of the node, and its degree of freedom
+	double chiSquare;
+	int degreeOfFreedom;
+	// the statistics of the rows that were added to the leaf by DecisionTree.updateClassifier (null if there are none)
+	NodeStatistics updates;
+	// the split of a numeric attribute: the values up to the threshold go to children[0] and the rest to children[1]
+	// (NaN for a split of a nominal attribute)
+	double threshold = Double.NaN;
+	// the bin of the threshold in the encoded training set
+	int thresholdBin;
+}
@@ -0,0 +1,30 @@
+package HomeWork2;
+
+// a node that waits to be split while the tree is built
+// the node owns the range [from, to) of the shared rows array
+class NodeRange {
+	Node node;
+	int from;
+	int to;
+	// the statistics of the node when they were derived from its parent (null if they have to be counted)
+	NodeStatistics statistics;
+	// true if the derived statistics were dropped to keep the frontier within its memory budget
+	// (then the node is counted in full, and isn't sampled)
+	boolean isEvicted;
+	// true if the split attribute of the node was chosen by a sample of its rows
+	boolean isSampled;
+	// the order of a split node in a best first build: the impurity reduction of the split, and the order of the decision
+	double priority;
+	long sequence;
+
+	NodeRange(Node node, int from, int to) {
+		this.node = node;
+		this.from = from;
+		this.to = to;
+	}
+
+	NodeRange(Node node, int from, int to, NodeStatistics statistics) {
+		this(node, from, to);
+		this.statistics = statistics;
+	}
+}
@@ -0,0 +1,304 @@
+package HomeWork2;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The class counts of a node, and a (value x class) table of counts for every attribute.
+ * All the split decisions of a node are derived from these tables, so the rows of a node
+ * are scanned only once. For a numeric attribute the table is a histogram of its bins, and
+ * the counts of any threshold split are sums over the histogram.
+ * A count is the sum of the weights of the rows, which is the number of rows when all the weights are 1.
+ */
+class NodeStatistics {
+	// nodes with fewer rows are counted by a single thread, even when the tree is built in parallel
+	static final int PARALLEL_THRESHOLD = 4096;
+	// the smallest group of attributes that is counted by a separate task
+	private static final int MIN_ATTRIBUTES_PER_TASK = 4;
+
+	// the number of rows of the node, and the sum of their weights
+	int numInstances;
+	double totalWeight;
+	final int numClasses;
+	final int classIndex;
+	// the weight of the instances of every class in the node
+	final double[] classCounts;
+	// the weight of value v and class c of attribute a is at valueClassCounts[a][v * numClasses + c]
+	// (null for the class attribute, and for the attributes that weren't counted)
+	final double[][] valueClassCounts;
+	// the bin edges of every numeric attribute (null for a nominal attribute)
+	final double[][] binEdges;
+	// the number of rows of the node that every counted row stands for (above 1 for the statistics of a sample)
+	double scale = 1;
+
+	private NodeStatistics(EncodedInstances data, int numInstances) {
+		this(data, numInstances, 0, data.numAttributes);
+	}
+
+	// statistics with tables for the attributes in [firstAttribute, lastAttribute) only
+	private NodeStatistics(EncodedInstances data, int numInstances, int firstAttribute, int lastAttribute) {
+		this.numInstances = numInstances;
+		this.numClasses = data.numClasses;
+		this.classIndex = data.classIndex;
+		this.binEdges = data.binEdges;
+		this.classCounts = new double[numClasses];
+		this.valueClassCounts = new double[data.numAttributes][];
+		for (int a = firstAttribute; a < lastAttribute; a++) {
+			if (a != data.classIndex) {
+				valueClassCounts[a] = new double[data.numValues[a] * numClasses];
+			}
+		}
+	}
+
+	/**
+	 * @param data a training set (possibly without rows) that defines the attributes and the classes
+	 * @return statistics without instances, to be filled by {@link #add(int[], double)}
+	 */
+	static NodeStatistics empty(EncodedInstances data) {
+		return new NodeStatistics(data, 0);
+	}
+
+	/**
+	 * Adds a single row to the statistics.
+	 *
+	 * @param valueIndexes the value index of every attribute of the row, including the class
+	 * @param weight the weight of the row
+	 */
+	void add(int[] valueIndexes, double weight) {
+		int classValue = valueIndexes[classIndex];
+		numInstances++;
+		totalWeight += weight;
+		classCounts[classValue] += weight;
+		for (int a = 0; a < valueClassCounts.length; a++) {
+			if (valueClassCounts[a] != null) {
+				valueClassCounts[a][valueIndexes[a] * numClasses + classValue] += weight;
+			}
+		}
+	}
+
+	/**
+	 * Derives the statistics of a child from the statistics of its parent and of all its other children,
+	 * without scanning the rows of the child. The subtraction is exact only for integer weights,
+	 * so with other weights every child should be counted.
+	 *
+	 * @param data the encoded training set
+	 * @param parent the statistics of the parent
+	 * @param siblings the statistics of the other children of the parent
+	 * @return the statistics of the rows of the parent that are in none of the siblings
+	 */
+	static NodeStatistics remainder(EncodedInstances data, NodeStatistics parent, List<NodeStatistics> siblings) {
+		int numInstances = parent.numInstances;
+		double totalWeight = parent.totalWeight;
+		for (NodeStatistics sibling : siblings) {
+			numInstances -= sibling.numInstances;
+			totalWeight -= sibling.totalWeight;
+		}
+		NodeStatistics statistics = new NodeStatistics(data, numInstances);
+		statistics.totalWeight = totalWeight;
+
+		System.arraycopy(parent.classCounts, 0, statistics.classCounts, 0, statistics.numClasses);
+		for (NodeStatistics sibling : siblings) {
+			for (int c = 0; c < statistics.numClasses; c++) {
+				statistics.classCounts[c] -= sibling.classCounts[c];
+			}
+		}
+		for (int a = 0; a < statistics.valueClassCounts.length; a++) {
+			double[] table = statistics.valueClassCounts[a];
+			if (table == null) {
+				continue;
+			}
+			System.arraycopy(parent.valueClassCounts[a], 0, table, 0, table.length);
+			for (NodeStatistics sibling : siblings) {
+				double[] siblingTable = sibling.valueClassCounts[a];
+				for (int i = 0; i < table.length; i++) {
+					table[i] -= siblingTable[i];
+				}
+			}
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * Counts the rows in rows[from, to) for every attribute in a single pass over the rows.
+	 * When called from a fork-join pool for a large node, groups of attributes are counted in parallel.
+	 *
+	 * @param data the encoded training set
+	 * @param rows row indexes of the training set
+	 * @param from the first position of the node in rows
+	 * @param to the position after the last position of the node in rows
+	 * @return the statistics of the node
+	 */
+	static NodeStatistics count(EncodedInstances data, int[] rows, int from, int to) {
+		NodeStatistics statistics = new NodeStatistics(data, to - from);
+
+		if (to - from >= PARALLEL_THRESHOLD && ForkJoinTask.inForkJoinPool()) {
+			// every task fills the tables of its own attributes, so the result doesn't depend on the scheduling
+			statistics.new CountTask(data, rows, from, to, 0, data.numAttributes).invoke();
+		}
+		else {
+			statistics.countAttributes(data, rows, from, to, 0, data.numAttributes, true);
+		}
+
+		return statistics;
+	}
+
+	/**
+	 * Counts the rows in rows[from, to) for a single attribute, like {@link #count(EncodedInstances, int[], int, int)}
+	 * but without the tables of the other attributes.
+	 *
+	 * @param data the encoded training set
+	 * @param rows row indexes of the training set
+	 * @param from the first position of the node in rows
+	 * @param to the position after the last position of the node in rows
+	 * @param attributeIndex the counted attribute
+	 * @return the statistics of the node, with the class counts and the table of the attribute
+	 */
+	static NodeStatistics count(EncodedInstances data, int[] rows, int from, int to, int attributeIndex) {
+		NodeStatistics statistics = new NodeStatistics(data, to - from, attributeIndex, attributeIndex + 1);
+		statistics.countAttributes(data, rows, from, to, attributeIndex, attributeIndex + 1, true);
+		return statistics;
+	}
+
+	// adds the rows in rows[from, to) to the tables of the attributes in [firstAttribute, lastAttribute)
+	// and to the class counts and the total weight if countClasses is set
+	private void countAttributes(EncodedInstances data, int[] rows, int from, int to, int firstAttribute, int lastAttribute,
+			boolean countClasses) {
+		byte[][] byteColumns = data.byteColumns;
+		short[][] shortColumns = data.shortColumns;
+		int[] classColumn = data.classColumn;
+		double[] weights = data.weights;
+
+		// for every row of the node
+		for (int i = from; i < to; i++) {
+			int row = rows[i];
+			int classValue = classColumn[row];
+			double weight = weights == null ? 1 : weights[row];
+			if (countClasses) {
+				classCounts[classValue] += weight;
+				totalWeight += weight;
+			}
+			// adds the row to the table of every attribute
+			for (int a = firstAttribute; a < lastAttribute; a++) {
+				if (valueClassCounts[a] == null) {
+					continue;
+				}
+				if (byteColumns[a] != null) {
+					valueClassCounts[a][byteColumns[a][row] * numClasses + classValue] += weight;
+				}
+				else {
+					valueClassCounts[a][shortColumns[a][row] * numClasses + classValue] += weight;
+				}
+			}
+		}
+	}
+
+	// counts the attributes in [firstAttribute, lastAttribute) by splitting them between parallel tasks
+	private class CountTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final EncodedInstances data;
+		private final int[] rows;
+		private final int from;
+		private final int to;
+		private final int firstAttribute;
+		private final int lastAttribute;
+
+		CountTask(EncodedInstances data, int[] rows, int from, int to, int firstAttribute, int lastAttribute) {
+			this.data = data;
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+			this.firstAttribute = firstAttribute;
+			this.lastAttribute = lastAttribute;
+		}
+
+		@Override
+		protected void compute() {
+			if (lastAttribute - firstAttribute <= MIN_ATTRIBUTES_PER_TASK) {
+				// the class counts are added by the task of the first attribute
+				countAttributes(data, rows, from, to, firstAttribute, lastAttribute, firstAttribute == 0);
+				return;
+			}
+			int middle = (firstAttribute + lastAttribute) >>> 1;
+			invokeAll(new CountTask(data, rows, from, to, firstAttribute, middle),
+					new CountTask(data, rows, from, to, middle, lastAttribute));
+		}
+	}
+
+	// returns the memory of the statistics of all the attributes of the given set
+	static long sizeInBytes(EncodedInstances data) {
+		long numOfCounts = data.numClasses;
+		for (int a = 0; a < data.numAttributes; a++) {
+			if (a != data.classIndex) {
+				numOfCounts += (long) data.numValues[a] * data.numClasses;
+			}
+		}
+		return numOfCounts * Double.BYTES;
+	}
+
+	// returns true if the given attribute is numeric
+	boolean isNumeric(int attributeIndex) {
+		return binEdges[attributeIndex] != null;
+	}
+
+	// returns the number of possible values of the given attribute
+	int numValues(int attributeIndex) {
+		return valueClassCounts[attributeIndex].length / numClasses;
+	}
+
+	// returns the weight of the instances with the given value in a (value x class) table of this node
+	double valueCount(double[] table, int valueIndex) {
+		double count = 0;
+		for (int c = 0; c < numClasses; c++) {
+			count += table[valueIndex * numClasses + c];
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the (child x class) table of a split of the node. The table of a nominal attribute has a row
+	 * for every value, and the table of a numeric attribute has a row for the bins up to the threshold bin
+	 * and a row for the bins above it.
+	 *
+	 * @param attributeIndex the split attribute
+	 * @param thresholdBin the last bin of the first child (ignored for a nominal attribute)
+	 * @return the table of the split
+	 */
+	double[] splitTable(int attributeIndex, int thresholdBin) {
+		double[] histogram = valueClassCounts[attributeIndex];
+		if (!isNumeric(attributeIndex)) {
+			return histogram;
+		}
+		double[] table = new double[2 * numClasses];
+		for (int b = 0; b < histogram.length / numClasses; b++) {
+			int child = b <= thresholdBin ? 0 : 1;
+			for (int c = 0; c < numClasses; c++) {
+				table[child * numClasses + c] += histogram[b * numClasses + c];
+			}
+		}
+		return table;
+	}
+
+	// returns the class of the instances of a perfectly classified node
+	int perfectClass() {
+		for (int c = 0; c < numClasses; c++) {
+			if (classCounts[c] != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	// returns true if all the instances of the node have the same class
+	boolean isPerfectlyClassified() {
+		int numOfClasses = 0;
+		for (int c = 0; c < numClasses; c++) {
+			if (classCounts[c] != 0) {
+				numOfClasses++;
+			}
+		}
+		return numOfClasses <= 1;
+	}
+}
@@ -0,0 +1,29 @@
+package HomeWork2;
+
+/**
+ * The classification of an instance, and the depth of the node that classified it.
+ * The compiled tree keeps one prediction per node, so classifying doesn't allocate.
+ */
+public final class Prediction {
+	private final double value;
+	private final int depth;
+
+	Prediction(double value, int depth) {
+		this.value = value;
+		this.depth = depth;
+	}
+
+	/**
+	 * @return the predicted class value
+	 */
+	public double value() {
+		return value;
+	}
+
+	/**
+	 * @return the length of the path from the root to the classifying node (the root depth is 0)
+	 */
+	public int depth() {
+		return depth;
+	}
+}
@@ -0,0 +1,161 @@
+package HomeWork2;
+
+import weka.core.Instance;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the classifying nodes of a compiled tree by the values of the attributes that the tree splits by.
+ * The classifying node of an instance depends only on the value indexes of these attributes, so instances
+ * that differ only in the other attributes share an entry. The key of an entry is the vector of these value
+ * indexes (with a 64-bit hash of it), and a hit skips the traversal of the tree.
+ * The entries are split between stripes by their hash, every stripe is an LRU map of its own lock, so
+ * concurrent lookups of different stripes don't wait for each other.
+ * A cache belongs to a single compiled tree, so retraining the tree (which compiles a new tree) starts a new cache.
+ */
+final class PredictionCache {
+	// the number of stripes, a power of 2
+	private static final int NUM_STRIPES = 16;
+
+	// the key of an entry, the value indexes of the used attributes in their order
+	private static final class Key {
+		final int[] valueIndexes;
+		final long hash;
+
+		Key(int[] valueIndexes) {
+			this.valueIndexes = valueIndexes;
+			long h = 0x9E3779B97F4A7C15L;
+			for (int valueIndex : valueIndexes) {
+				h = (h ^ valueIndex) * 0xBF58476D1CE4E5B9L;
+				h ^= h >>> 31;
+			}
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) hash;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof Key && ((Key) other).hash == hash && Arrays.equals(((Key) other).valueIndexes, valueIndexes);
+		}
+	}
+
+	// an LRU map that drops its least recently used entry beyond its capacity
+	private static final class Stripe extends LinkedHashMap<Key, Integer> {
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Stripe(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Integer> eldest) {
+			return size() > capacity;
+		}
+	}
+
+	// the tree of the cached nodes
+	final CompiledTree tree;
+	// the attributes that the tree splits by, the attributes of the keys
+	private final int[] usedAttributes;
+	private final Stripe[] stripes = new Stripe[NUM_STRIPES];
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	// gets the hits and the misses (null -> they are only counted by the cache)
+	private final TreeMetricsListener metrics;
+
+	/**
+	 * @param tree the tree of the cached nodes
+	 * @param capacity the largest number of entries
+	 * @param metrics gets the hits and the misses (null -> they are only counted by the cache)
+	 */
+	PredictionCache(CompiledTree tree, int capacity, TreeMetricsListener metrics) {
+		this.tree = tree;
+		this.metrics = metrics;
+		this.usedAttributes = tree.usedAttributes();
+		int stripeCapacity = Math.max(1, (capacity + NUM_STRIPES - 1) / NUM_STRIPES);
+		for (int s = 0; s < NUM_STRIPES; s++) {
+			stripes[s] = new Stripe(stripeCapacity);
+		}
+	}
+
+	/**
+	 * Finds the node of the tree that classifies the given instance, from the cache if it's there.
+	 *
+	 * @param instance an instance with the attributes of the training data
+	 * @return the number of the classifying node
+	 */
+	int classifyingNode(Instance instance) {
+		int[] keyValues = new int[usedAttributes.length];
+		for (int i = 0; i < usedAttributes.length; i++) {
+			int a = usedAttributes[i];
+			keyValues[i] = instance.isMissing(a) ? CompiledTree.NONE : tree.valueIndex(a, instance.value(a));
+		}
+		Key key = new Key(keyValues);
+		// the high bits of the hash choose the stripe, the low bits are used by the map of the stripe
+		Stripe stripe = stripes[(int) (key.hash >>> 60) & (NUM_STRIPES - 1)];
+
+		Integer node;
+		synchronized (stripe) {
+			node = stripe.get(key);
+		}
+		if (node != null) {
+			hits.increment();
+			if (metrics != null) {
+				metrics.predictionCacheLookup(true);
+			}
+			return node;
+		}
+		misses.increment();
+		if (metrics != null) {
+			metrics.predictionCacheLookup(false);
+		}
+
+		// the tree reads only the used attributes of the value index vector
+		int[] valueIndexes = new int[tree.numAttributes()];
+		for (int i = 0; i < usedAttributes.length; i++) {
+			valueIndexes[usedAttributes[i]] = keyValues[i];
+		}
+		int classifyingNode = tree.classifyingNode(valueIndexes);
+		synchronized (stripe) {
+			stripe.put(key, classifyingNode);
+		}
+		return classifyingNode;
+	}
+
+	/**
+	 * @return the number of lookups that found their node in the cache
+	 */
+	long hits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return the number of lookups that traversed the tree
+	 */
+	long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return the number of entries in the cache
+	 */
+	int size() {
+		int size = 0;
+		for (Stripe stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,244 @@
+package HomeWork2;
+
+import weka.classifiers.Classifier;
+import weka.core.Capabilities;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+/**
+ * A forest of decision trees, every tree built on a bootstrap sample of the training data and splitting
+ * every node by the best of a random subset of the attributes. An instance is classified by the class
+ * with the highest average distribution over the trees.
+ * The training data is encoded once and shared by all the trees, and a bootstrap sample is an array of
+ * row indexes (with repetitions), so no instances are copied. The trees are built in parallel by a pool
+ * of numThreads threads, and the out-of-bag error is computed from the samples of the build.
+ */
+public class RandomForest implements Classifier {
+	// the trees of the forest
+	private CompiledTree[] trees;
+	private int numClasses;
+	// the error of the trees on the training instances that were not in their bootstrap samples
+	private double outOfBagError = Double.NaN;
+	protected int numTrees = 100;
+	protected boolean isGini;
+	// the p-value index of the trees (0 -> no pruning)
+	protected int pValueIndex;
+	// the p-value of the trees, any value in (0, 1] (NaN -> the p-value of pValueIndex)
+	protected double pValue = Double.NaN;
+	// the number of random attributes that every node chooses its split from (0 -> the square root of the number of attributes)
+	protected int numRandomAttributes = 0;
+	// the number of threads that build the trees and classify the batches
+	protected int numThreads = Runtime.getRuntime().availableProcessors();
+	protected long seed = 1;
+	// gets the metrics of building the trees (null -> nothing is measured)
+	protected TreeMetricsListener metrics;
+
+	@Override
+	public void buildClassifier(Instances arg0) throws Exception {
+		EncodedInstances instancesSet = EncodedInstances.encode(arg0);
+		int numOfAttributes = instancesSet.numAttributes - 1;
+		int randomAttributes = numRandomAttributes > 0 ? numRandomAttributes
+				: Math.max(1, (int) Math.round(Math.sqrt(numOfAttributes)));
+		numClasses = instancesSet.numClasses;
+		trees = new CompiledTree[numTrees];
+		// the rows of the bootstrap sample of every tree
+		BitSet[] inBag = new BitSet[numTrees];
+
+		// at most numThreads trees (and their row arrays and statistics) are built at the same time
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, numThreads));
+		try {
+			List<Future<?>> builds = new ArrayList<Future<?>>();
+			for (int t = 0; t < numTrees; t++) {
+				int treeIndex = t;
+				builds.add(pool.submit(() -> buildTree(instancesSet, treeIndex, randomAttributes, inBag)));
+			}
+			for (Future<?> build : builds) {
+				build.get();
+			}
+		}
+		finally {
+			pool.shutdown();
+		}
+
+		outOfBagError = calcOutOfBagError(instancesSet, inBag);
+	}
+
+	// builds tree treeIndex on its own bootstrap sample, the sample depends only on the seed and the index of the tree
+	private void buildTree(EncodedInstances instancesSet, int treeIndex, int randomAttributes, BitSet[] inBag) {
+		SplittableRandom random = new SplittableRandom(seed + treeIndex);
+		int numOfRows = instancesSet.numInstances;
+		int[] sample = new int[numOfRows];
+		BitSet bag = new BitSet(numOfRows);
+
+		// draws the rows of the sample with repetitions
+		for (int i = 0; i < numOfRows; i++) {
+			sample[i] = random.nextInt(numOfRows);
+			bag.set(sample[i]);
+		}
+
+		DecisionTree tree = new DecisionTree();
+		tree.isGini = isGini;
+		tree.pValueIndex = pValueIndex;
+		tree.pValue = pValue;
+		tree.numRandomAttributes = randomAttributes;
+		tree.seed = random.nextLong();
+		tree.metrics = metrics;
+		tree.buildClassifier(instancesSet, sample);
+		trees[treeIndex] = tree.getCompiledTree();
+		inBag[treeIndex] = bag;
+	}
+
+	// classifies every training row by the trees that didn't have it in their samples,
+	// and returns the error of the rows that at least one tree didn't have
+	private double calcOutOfBagError(EncodedInstances instancesSet, BitSet[] inBag) {
+		int numOfRows = instancesSet.numInstances;
+		int numOfBlocks = (numOfRows + CompiledTree.BLOCK_SIZE - 1) / CompiledTree.BLOCK_SIZE;
+
+		// the number of classified rows and the number of errors of every block
+		long[] counts = IntStream.range(0, numOfBlocks).parallel().mapToObj(block -> {
+			int from = block * CompiledTree.BLOCK_SIZE;
+			int to = Math.min(numOfRows, from + CompiledTree.BLOCK_SIZE);
+			int[][] columns = instancesSet.columns(from, to);
+			double[] sums = new double[(to - from) * numClasses];
+			boolean[] classified = new boolean[to - from];
+			int[] nodes = new int[to - from];
+			for (int t = 0; t < trees.length; t++) {
+				trees[t].classifyingNodes(columns, 0, to - from, nodes);
+				for (int i = 0; i < nodes.length; i++) {
+					if (!inBag[t].get(from + i)) {
+						addDistribution(trees[t], nodes[i], sums, i);
+						classified[i] = true;
+					}
+				}
+			}
+			long[] blockCounts = new long[2];
+			for (int i = 0; i < nodes.length; i++) {
+				if (classified[i]) {
+					blockCounts[0]++;
+					if (majorityClass(sums, i) != instancesSet.classColumn[from + i]) {
+						blockCounts[1]++;
+					}
+				}
+			}
+			return blockCounts;
+		}).reduce(new long[2], (first, second) -> new long[] {first[0] + second[0], first[1] + second[1]});
+
+		return counts[0] == 0 ? Double.NaN : (double) counts[1] / counts[0];
+	}
+
+	// adds the distribution of the given node to the sums of row i
+	private void addDistribution(CompiledTree tree, int node, double[] sums, int i) {
+		for (int c = 0; c < numClasses; c++) {
+			sums[i * numClasses + c] += tree.distribution[node * numClasses + c];
+		}
+	}
+
+	// returns the class with the highest sum of row i (a tie goes to the first of the tied classes)
+	private int majorityClass(double[] sums, int i) {
+		int majorityClass = 0;
+		for (int c = 1; c < numClasses; c++) {
+			if (sums[i * numClasses + c] > sums[i * numClasses + majorityClass]) {
+				majorityClass = c;
+			}
+		}
+		return majorityClass;
+	}
+
+	/**
+	 * @return the error of the trees on the training instances that were not in their bootstrap samples,
+	 * computed while building (NaN if every instance was in every sample)
+	 */
+	public double outOfBagError() {
+		return outOfBagError;
+	}
+
+	/**
+	 * Classifies all the instances in the given set. Every block of instances is copied to columns of
+	 * value indexes once, and routed through all the trees.
+	 *
+	 * @param instancesSet the instances to classify
+	 * @param predictions gets the classification of instance i at predictions[i]
+	 * @param parallel true to split the blocks of instances between the available cores
+	 */
+	public void classifyBatch(Instances instancesSet, double[] predictions, boolean parallel) {
+		int numOfRows = instancesSet.numInstances();
+		int numOfBlocks = (numOfRows + CompiledTree.BLOCK_SIZE - 1) / CompiledTree.BLOCK_SIZE;
+		IntStream blocks = IntStream.range(0, numOfBlocks);
+		if (parallel) {
+			blocks = blocks.parallel();
+		}
+		// every block writes its own part of the predictions
+		blocks.forEach(block -> classifyBlock(instancesSet, block * CompiledTree.BLOCK_SIZE,
+				Math.min(numOfRows, (block + 1) * CompiledTree.BLOCK_SIZE), predictions));
+	}
+
+	// classifies the instances [from, to) by all the trees
+	private void classifyBlock(Instances instancesSet, int from, int to, double[] predictions) {
+		// all the trees were trained on the same encoded set, so they share the value indexes
+		CompiledTree firstTree = trees[0];
+		int[][] columns = new int[instancesSet.numAttributes()][];
+		for (int a = 0; a < columns.length; a++) {
+			if (a == instancesSet.classIndex()) {
+				continue;
+			}
+			columns[a] = new int[to - from];
+			for (int i = from; i < to; i++) {
+				Instance currentInstance = instancesSet.instance(i);
+				columns[a][i - from] = currentInstance.isMissing(a) ? CompiledTree.NONE
+						: firstTree.valueIndex(a, currentInstance.value(a));
+			}
+		}
+
+		double[] sums = new double[(to - from) * numClasses];
+		int[] nodes = new int[to - from];
+		for (CompiledTree tree : trees) {
+			tree.classifyingNodes(columns, 0, to - from, nodes);
+			for (int i = 0; i < nodes.length; i++) {
+				addDistribution(tree, nodes[i], sums, i);
+			}
+		}
+		for (int i = 0; i < nodes.length; i++) {
+			predictions[from + i] = majorityClass(sums, i);
+		}
+	}
+
+	@Override
+	public double classifyInstance(Instance instance) throws Exception {
+		return majorityClass(sumOfDistributions(instance), 0);
+	}
+
+	/**
+	 * Returns the average of the class distributions of the trees for the instance.
+	 */
+	@Override
+	public double[] distributionForInstance(Instance instance) throws Exception {
+		double[] distribution = sumOfDistributions(instance);
+		for (int c = 0; c < numClasses; c++) {
+			distribution[c] /= trees.length;
+		}
+		return distribution;
+	}
+
+	// returns the sum of the class distributions of the trees for the instance
+	private double[] sumOfDistributions(Instance instance) {
+		double[] sums = new double[numClasses];
+		for (CompiledTree tree : trees) {
+			addDistribution(tree, tree.classifyingNode(instance), sums, 0);
+		}
+		return sums;
+	}
+
+	@Override
+	public Capabilities getCapabilities() {
+		return null;
+	}
+}
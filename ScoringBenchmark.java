@@ -0,0 +1,64 @@
+package HomeWork2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the latency of classifying a single instance, and the throughput of evaluating a test set.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScoringBenchmark {
+	@Param({"100000"})
+	public int rows;
+	@Param({"50"})
+	public int attributes;
+	@Param({"4"})
+	public int arity;
+	@Param({"0.5"})
+	public double classBalance;
+
+	private DecisionTree tree;
+	private Instances testData;
+	// the next test instance to classify
+	private int next;
+
+	@Setup
+	public void build() throws Exception {
+		tree = new DecisionTree();
+		tree.isGini = true;
+		tree.buildClassifier(SyntheticData.generate(rows, attributes, arity, classBalance, 1));
+		testData = SyntheticData.generate(rows / 10, attributes, arity, classBalance, 2);
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public double classifyInstance() {
+		if (++next == testData.numInstances()) {
+			next = 0;
+		}
+		return tree.classifyInstance(testData.instance(next));
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	public double calcAvgError() {
+		return tree.calcAvgError(testData);
+	}
+}
@@ -0,0 +1,156 @@
+package HomeWork2;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Measures a {@link ScoringServer} under load. Every client sends a request as soon as it gets the answer
+ * of its previous request (a closed loop), and halfway through the run the model is swapped for a tree
+ * trained on other data, to show that the swap neither fails nor stalls the requests in flight.
+ * Reports the throughput, the p50 and p99 latencies, the errors and the model versions that answered.
+ */
+public class ScoringLoadGenerator {
+
+	private ScoringLoadGenerator() {
+	}
+
+	/**
+	 * Runs the load.
+	 *
+	 * @param args optional: the number of clients, the rows of a request, and the seconds of the run
+	 * @throws Exception if a model can't be built or the server can't start
+	 */
+	public static void main(String[] args) throws Exception {
+		int numClients = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int rowsPerRequest = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+		long durationNanos = (args.length > 2 ? Long.parseLong(args[2]) : 10) * 1_000_000_000L;
+		int numAttributes = 50;
+
+		ModelRegistry registry = new ModelRegistry();
+		registry.register("synthetic", train(numAttributes, 1).getCompiledTree());
+		DecisionTree nextTree = train(numAttributes, 2);
+		Instances testData = SyntheticData.generate(10000, numAttributes, 4, 0.5, 3);
+		String[] bodies = requestBodies(testData, rowsPerRequest);
+
+		try (ScoringServer server = new ScoringServer(registry, 0)) {
+			HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+			URI uri = URI.create("http://localhost:" + server.port() + "/models/synthetic");
+			Set<String> versions = ConcurrentHashMap.newKeySet();
+			ExecutorService clients = Executors.newFixedThreadPool(numClients);
+			long start = System.nanoTime();
+			long end = start + durationNanos;
+
+			List<Future<long[]>> results = new ArrayList<Future<long[]>>();
+			for (int c = 0; c < numClients; c++) {
+				int clientIndex = c;
+				results.add(clients.submit(() -> runClient(client, uri, bodies, clientIndex, end, versions)));
+			}
+			// swaps the model halfway through
+			Thread.sleep(durationNanos / 2 / 1_000_000);
+			registry.register("synthetic", nextTree.getCompiledTree());
+
+			// the latencies of every client, and its number of errors at the last index
+			long[] latencies = new long[0];
+			long errors = 0;
+			for (Future<long[]> result : results) {
+				long[] clientResult = result.get();
+				errors += clientResult[clientResult.length - 1];
+				int length = latencies.length;
+				latencies = Arrays.copyOf(latencies, length + clientResult.length - 1);
+				System.arraycopy(clientResult, 0, latencies, length, clientResult.length - 1);
+			}
+			double seconds = (System.nanoTime() - start) / 1e9;
+			clients.shutdown();
+
+			Arrays.sort(latencies);
+			System.out.printf("clients %d, rows per request %d, %.1f s%n", numClients, rowsPerRequest, seconds);
+			System.out.printf("throughput %.0f requests/s, %.0f rows/s%n", latencies.length / seconds,
+					latencies.length * (double) rowsPerRequest / seconds);
+			System.out.printf("latency p50 %.3f ms, p99 %.3f ms%n", percentile(latencies, 0.5) / 1e6,
+					percentile(latencies, 0.99) / 1e6);
+			System.out.println("errors " + errors + ", model versions " + versions);
+		}
+	}
+
+	// trains a tree on synthetic data
+	private static DecisionTree train(int numAttributes, long seed) throws Exception {
+		DecisionTree tree = new DecisionTree();
+		tree.isGini = true;
+		tree.buildClassifier(SyntheticData.generate(100000, numAttributes, 4, 0.5, seed));
+		return tree;
+	}
+
+	// returns the bodies of the requests, rowsPerRequest test instances in every body
+	private static String[] requestBodies(Instances testData, int rowsPerRequest) {
+		String[] bodies = new String[testData.numInstances() / rowsPerRequest];
+		for (int b = 0; b < bodies.length; b++) {
+			StringBuilder body = new StringBuilder();
+			for (int i = b * rowsPerRequest; i < (b + 1) * rowsPerRequest; i++) {
+				Instance instance = testData.instance(i);
+				for (int a = 0; a < testData.numAttributes(); a++) {
+					if (a > 0) {
+						body.append(',');
+					}
+					body.append(instance.isMissing(a) ? "?" : Double.toString(instance.value(a)));
+				}
+				body.append('\n');
+			}
+			bodies[b] = body.toString();
+		}
+		return bodies;
+	}
+
+	// sends requests until the end time, and returns their latencies with the number of errors at the last index
+	private static long[] runClient(HttpClient client, URI uri, String[] bodies, int clientIndex, long end,
+			Set<String> versions) throws InterruptedException {
+		long[] latencies = new long[1024];
+		int count = 0;
+		long errors = 0;
+		for (int next = clientIndex; System.nanoTime() < end; next++) {
+			HttpRequest request = HttpRequest.newBuilder(uri)
+					.POST(HttpRequest.BodyPublishers.ofString(bodies[next % bodies.length])).build();
+			long start = System.nanoTime();
+			try {
+				HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+				if (response.statusCode() != 200) {
+					errors++;
+					continue;
+				}
+				response.headers().firstValue("Model-Version").ifPresent(versions::add);
+			}
+			catch (IOException e) {
+				errors++;
+				continue;
+			}
+			if (count == latencies.length) {
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+			latencies[count++] = System.nanoTime() - start;
+		}
+		long[] result = Arrays.copyOf(latencies, count + 1);
+		result[count] = errors;
+		return result;
+	}
+
+	// returns the value at the given fraction of the sorted values
+	private static double percentile(long[] sortedValues, double fraction) {
+		if (sortedValues.length == 0) {
+			return Double.NaN;
+		}
+		return sortedValues[Math.min(sortedValues.length - 1, (int) (fraction * sortedValues.length))];
+	}
+}
@@ -0,0 +1,232 @@
+package HomeWork2;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A scoring service of the models of a {@link ModelRegistry}, over HTTP on the loopback interface only.
+ * <ul>
+ * <li>GET /models lists the current version of every model, a line of "name version" per model.</li>
+ * <li>POST /models/{name} scores the rows of the body, a line of comma separated values per row in the order
+ * of the attributes of the training data ("?" for a missing value, and any value for the class). A nominal value
+ * is its value index, and a number that isn't a value index of the attribute is scored like a value that wasn't
+ * in the training data. The response has a line per row with the return value of its classifying node, and the
+ * version of the model that scored all the rows in the Model-Version header.</li>
+ * </ul>
+ * The concurrent requests of every model are collected into batches by a {@link MicroBatcher}. Every exchange
+ * and every batch runs on a virtual thread when the runtime has them, and on a pooled daemon thread otherwise.
+ * A model is swapped by registering a new version in the registry while the server runs.
+ */
+public class ScoringServer implements Closeable {
+	private final ModelRegistry registry;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	// the batcher of every model name that was requested
+	private final ConcurrentHashMap<String, MicroBatcher> batchers = new ConcurrentHashMap<String, MicroBatcher>();
+	// the largest number of rows of a batch
+	protected int maxBatchRows = CompiledTree.BLOCK_SIZE;
+	// the longest time that a request waits for more requests to join its batch (0 -> batches only what already waits)
+	protected long maxBatchDelayNanos = 0;
+	// the longest time that a request waits for its predictions before it is answered with 503
+	protected long requestTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
+
+	/**
+	 * Starts a server of the models of the registry.
+	 *
+	 * @param registry the models
+	 * @param port the port on the loopback interface (0 -> any free port)
+	 * @throws IOException if the port can't be bound
+	 */
+	public ScoringServer(ModelRegistry registry, int port) throws IOException {
+		this.registry = registry;
+		executor = newExecutor();
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+		server.setExecutor(executor);
+		server.createContext("/models", this::handle);
+		server.start();
+	}
+
+	// returns an executor of virtual threads when the runtime has them (Java 21),
+	// and a pool of daemon threads otherwise
+	private static ExecutorService newExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		}
+		catch (ReflectiveOperationException e) {
+			return Executors.newCachedThreadPool(task -> {
+				Thread thread = new Thread(task, "scoring");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * @return the port that the server listens on
+	 */
+	public int port() {
+		return server.getAddress().getPort();
+	}
+
+	// handles an exchange of /models or /models/{name}
+	private void handle(HttpExchange exchange) throws IOException {
+		try {
+			String path = exchange.getRequestURI().getPath();
+			String name = path.length() > "/models/".length() ? path.substring("/models/".length()) : null;
+			if (name == null) {
+				if (!exchange.getRequestMethod().equals("GET")) {
+					respond(exchange, 405, "Use GET\n");
+					return;
+				}
+				StringBuilder body = new StringBuilder();
+				for (ModelRegistry.Model model : registry.models()) {
+					body.append(model.name).append(' ').append(model.version).append('\n');
+				}
+				respond(exchange, 200, body.toString());
+				return;
+			}
+			if (!exchange.getRequestMethod().equals("POST")) {
+				respond(exchange, 405, "Use POST\n");
+				return;
+			}
+			if (registry.model(name) == null) {
+				respond(exchange, 404, "No model " + name + "\n");
+				return;
+			}
+
+			double[][] rows;
+			try {
+				rows = parseRows(readBody(exchange.getRequestBody()));
+			}
+			catch (NumberFormatException e) {
+				respond(exchange, 400, e.getMessage() + "\n");
+				return;
+			}
+
+			MicroBatcher.Result result;
+			try {
+				result = batcher(name).score(rows).get(requestTimeoutNanos, TimeUnit.NANOSECONDS);
+			}
+			catch (TimeoutException e) {
+				respond(exchange, 503, "Timed out\n");
+				return;
+			}
+			catch (ExecutionException | CompletionException e) {
+				respond(exchange, e.getCause() instanceof IllegalArgumentException ? 400 : 500, e.getCause().getMessage() + "\n");
+				return;
+			}
+			StringBuilder body = new StringBuilder(rows.length * 4);
+			for (double prediction : result.predictions) {
+				body.append(prediction).append('\n');
+			}
+			exchange.getResponseHeaders().set("Model-Version", Long.toString(result.version));
+			respond(exchange, 200, body.toString());
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			respond(exchange, 503, "Interrupted\n");
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	// returns the batcher of the model, creating it on the first request
+	private MicroBatcher batcher(String name) {
+		return batchers.computeIfAbsent(name, modelName -> new MicroBatcher(registry, modelName, executor,
+				maxBatchRows, maxBatchDelayNanos));
+	}
+
+	// reads the whole body of a request
+	private static String readBody(InputStream input) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int length;
+		while ((length = input.read(buffer)) > 0) {
+			bytes.write(buffer, 0, length);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	// parses a line of comma separated values per row, "?" for a missing value
+	static double[][] parseRows(String body) {
+		List<double[]> rows = new ArrayList<double[]>();
+		for (String line : body.split("\n")) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+			String[] fields = line.split(",");
+			double[] values = new double[fields.length];
+			for (int a = 0; a < fields.length; a++) {
+				String field = fields[a].trim();
+				values[a] = field.equals("?") ? Double.NaN : Double.parseDouble(field);
+			}
+			rows.add(values);
+		}
+		return rows.toArray(new double[rows.size()][]);
+	}
+
+	// sends a text response
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * Stops the server, after the exchanges in flight are answered (waiting at most a second).
+	 */
+	@Override
+	public void close() {
+		server.stop(1);
+		for (MicroBatcher batcher : batchers.values()) {
+			batcher.stop();
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Serves model files on the loopback interface until the process is stopped.
+	 *
+	 * @param args the port, and a name=path pair for every model file written by {@link DecisionTree#saveModel}
+	 * @throws IOException if the port can't be bound or a model file can't be read
+	 */
+	public static void main(String[] args) throws IOException {
+		ModelRegistry registry = new ModelRegistry();
+		for (int i = 1; i < args.length; i++) {
+			int separator = args[i].indexOf('=');
+			registry.load(args[i].substring(0, separator), Paths.get(args[i].substring(separator + 1)));
+		}
+		ScoringServer server = new ScoringServer(registry, args.length > 0 ? Integer.parseInt(args[0]) : 0);
+		System.out.println("Scoring on http://localhost:" + server.port() + "/models");
+	}
+}
@@ -0,0 +1,97 @@
+package HomeWork2;
+
+import weka.core.Instance;
+
+/**
+ * A trained tree that classifies value index vectors.
+ * The value index of a numeric attribute is the index of its bin in the training data (see {@link #valueIndex(int, double)}).
+ * The nodes are numbered in BFS order and the root is node 0.
+ */
+public interface ScoringTree {
+
+	/**
+	 * Finds the node that classifies the given values. This is a leaf, or the inner node
+	 * where the value of the instance didn't appear in the training data.
+	 *
+	 * @param values the value of every attribute, nominal values as value indexes and numeric values as they are
+	 *               (NaN for a missing value)
+	 * @return the number of the classifying node
+	 */
+	int classifyingNode(double[] values);
+
+	/**
+	 * Finds the node that classifies the given value indexes.
+	 *
+	 * @param valueIndexes the value index of every attribute (negative for a missing value)
+	 * @return the number of the classifying node
+	 */
+	int classifyingNode(int[] valueIndexes);
+
+	/**
+	 * Finds the node that classifies the given instance, reading the value indexes straight from the instance.
+	 *
+	 * @param instance an instance with the attributes of the training data
+	 * @return the number of the classifying node
+	 */
+	int classifyingNode(Instance instance);
+
+	/**
+	 * Finds the classifying nodes of a block of rows given as columns of value indexes.
+	 *
+	 * @param columns the value indexes of every attribute, columns[attribute][row] (negative for a missing value)
+	 * @param from the first row to classify
+	 * @param to the row after the last row to classify
+	 * @param nodes gets the classifying node of row from + i at nodes[i]
+	 */
+	default void classifyingNodes(int[][] columns, int from, int to, int[] nodes) {
+		int[] valueIndexes = new int[columns.length];
+		for (int row = from; row < to; row++) {
+			for (int a = 0; a < columns.length; a++) {
+				valueIndexes[a] = columns[a] == null ? CompiledTree.NONE : columns[a][row];
+			}
+			nodes[row - from] = classifyingNode(valueIndexes);
+		}
+	}
+
+	/**
+	 * @param attributeIndex an attribute of the training data
+	 * @param value a value of the attribute, a nominal value as its value index
+	 * @return the value index of the value in the value index vectors (the bin of a numeric value),
+	 * {@link CompiledTree#NONE} for a nominal value that isn't the index of a value of the attribute
+	 * (classified like a value that wasn't in the training data)
+	 */
+	int valueIndex(int attributeIndex, double value);
+
+	/**
+	 * @param node the number of a node
+	 * @return the return value of the node
+	 */
+	double value(int node);
+
+	/**
+	 * @param node the number of a node
+	 * @param distribution gets the fraction of the training instances of the node in every class
+	 */
+	void distribution(int node, double[] distribution);
+
+	/**
+	 * @return the number of classes
+	 */
+	int numClasses();
+
+	/**
+	 * @return the number of attributes of the training data, including the class
+	 */
+	int numAttributes();
+
+	/**
+	 * @param node the number of a node
+	 * @return the depth of the node (the number of edges from the root)
+	 */
+	int depth(int node);
+
+	/**
+	 * @return the number of nodes in the tree
+	 */
+	int numNodes();
+}
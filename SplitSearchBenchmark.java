@@ -0,0 +1,70 @@
+package HomeWork2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the split search of the root node in isolation: the single counting pass over the rows,
+ * choosing the best attribute from the count tables, and the gain of a single attribute.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SplitSearchBenchmark {
+	@Param({"100000"})
+	public int rows;
+	@Param({"50", "500"})
+	public int attributes;
+	@Param({"4"})
+	public int arity;
+	@Param({"0.5"})
+	public double classBalance;
+	@Param({"true", "false"})
+	public boolean gini;
+
+	private EncodedInstances data;
+	private int[] rowIndexes;
+	private DecisionTree tree;
+	private NodeStatistics rootStatistics;
+
+	@Setup
+	public void generate() {
+		data = EncodedInstances.encode(SyntheticData.generate(rows, attributes, arity, classBalance, 1));
+		rowIndexes = new int[data.numInstances];
+		for (int i = 0; i < rowIndexes.length; i++) {
+			rowIndexes[i] = i;
+		}
+		tree = new DecisionTree();
+		tree.isGini = gini;
+		rootStatistics = NodeStatistics.count(data, rowIndexes, 0, rowIndexes.length);
+	}
+
+	@Benchmark
+	public NodeStatistics countRoot() {
+		return NodeStatistics.count(data, rowIndexes, 0, rowIndexes.length);
+	}
+
+	@Benchmark
+	public int bestAttribute() {
+		return tree.bestAttribute(rootStatistics);
+	}
+
+	@Benchmark
+	public double calcGain() {
+		return tree.calcGain(rootStatistics, 0);
+	}
+}
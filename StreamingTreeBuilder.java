@@ -0,0 +1,285 @@
+package HomeWork2;
+
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.converters.ArffLoader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds a tree from an ARFF file without keeping the instances in memory.
+ * The tree is built level by level: every level is one pass over the rows, in which every row is
+ * routed through the tree built so far and added to the statistics of the frontier node it reaches.
+ * The nodes of the level are then decided from their statistics exactly like in the in-memory build,
+ * so both builds give the same tree. The node budget of the tree is spent in the order of the levels,
+ * like in the level-wise in-memory build, and the statistics that a pass keeps are limited by the frontier
+ * memory budget of the tree, so the nodes of a large level are counted in several passes.
+ * The rows can be spilled to a temporary file of value indexes in the first pass, so the following
+ * passes read compact fixed size records instead of parsing the ARFF file again.
+ * Only nominal attributes are supported, since binning a numeric attribute needs all its values up front,
+ * and only unit weights, since the spill file keeps only the value indexes.
+ */
+class StreamingTreeBuilder {
+	private final DecisionTree tree;
+	private final Path arffFile;
+	private final boolean spillToDisk;
+	// the attributes of the data (the class is the last attribute)
+	private Instances header;
+	// an encoded set without rows, that defines the shape of the statistics
+	private EncodedInstances shape;
+	// the value indexes of the rows, written in the first pass (null if not spilled yet)
+	private Path spillFile;
+
+	StreamingTreeBuilder(DecisionTree tree, Path arffFile, boolean spillToDisk) {
+		this.tree = tree;
+		this.arffFile = arffFile;
+		this.spillToDisk = spillToDisk;
+	}
+
+	/**
+	 * @return the attributes of the data (the class is the last attribute), available after {@link #build()}
+	 */
+	Instances header() {
+		return header;
+	}
+
+	/**
+	 * @return an encoded set without rows with the attributes of the data, available after {@link #build()}
+	 */
+	EncodedInstances shape() {
+		return shape;
+	}
+
+	/**
+	 * Builds the tree.
+	 *
+	 * @return the root of the tree
+	 * @throws IOException if the ARFF file or the spill file can't be read
+	 */
+	Node build() throws IOException {
+		Node root = new Node();
+		root.seed = tree.seed;
+		if (tree.metrics != null) {
+			tree.metrics.nodeCreated(0);
+		}
+		List<Node> frontier = new ArrayList<Node>();
+		frontier.add(root);
+
+		// reads the attributes from the header of the file
+		try (ArffRowReader reader = new ArffRowReader(arffFile)) {
+			header = reader.structure;
+		}
+		for (int a = 0; a < header.numAttributes(); a++) {
+			if (!header.attribute(a).isNominal()) {
+				throw new IllegalArgumentException("Attribute " + a + " is not nominal, the streaming build supports only nominal attributes");
+			}
+		}
+		shape = EncodedInstances.encode(header);
+
+		// the number of nodes of the tree, for the node budget
+		int numOfNodes = 1;
+		// the number of frontier nodes whose statistics fit in the frontier memory budget (at least one)
+		long nodesPerPass = tree.maxFrontierBytes > 0
+				? Math.max(1, tree.maxFrontierBytes / NodeStatistics.sizeInBytes(shape)) : Integer.MAX_VALUE;
+		try {
+			while (!frontier.isEmpty()) {
+				List<Node> nextFrontier = new ArrayList<Node>();
+				// counts the nodes of the level in passes of nodesPerPass nodes,
+				// decides them in order, and moves to the level of their children
+				for (int from = 0; from < frontier.size(); from = (int) Math.min(frontier.size(), from + nodesPerPass)) {
+					List<Node> passNodes = frontier.subList(from, (int) Math.min(frontier.size(), from + nodesPerPass));
+					NodeStatistics[] statistics = countFrontier(root, passNodes);
+					for (int i = 0; i < passNodes.size(); i++) {
+						Node currentNode = passNodes.get(i);
+						if (!tree.decideNode(currentNode, statistics[i])) {
+							continue;
+						}
+						int numOfChildren = 0;
+						for (Node child : currentNode.children) {
+							if (child != null) {
+								numOfChildren++;
+							}
+						}
+						// a split that exceeds the node budget turns the node into a leaf
+						if (tree.maxNodes > 0 && numOfNodes + numOfChildren > tree.maxNodes) {
+							DecisionTree.makeLeaf(currentNode);
+							continue;
+						}
+						numOfNodes += numOfChildren;
+						tree.reportChildren(currentNode);
+						for (Node child : currentNode.children) {
+							if (child != null) {
+								nextFrontier.add(child);
+							}
+						}
+					}
+				}
+				frontier = nextFrontier;
+			}
+		}
+		finally {
+			if (spillFile != null) {
+				Files.deleteIfExists(spillFile);
+			}
+		}
+
+		return root;
+	}
+
+	// passes over all the rows once, and counts the rows that reach every given frontier node
+	private NodeStatistics[] countFrontier(Node root, List<Node> frontier) throws IOException {
+		// the frontier nodes are the unfinished leaves of the tree built so far
+		CompiledTree routing = CompiledTree.compile(root, shape.binEdges, shape.numValues, shape.numClasses);
+		Map<Node, Integer> frontierIndexes = new IdentityHashMap<Node, Integer>();
+		for (int i = 0; i < frontier.size(); i++) {
+			frontierIndexes.put(frontier.get(i), i);
+		}
+		List<Node> nodes = CompiledTree.bfsOrder(root);
+		// the frontier index of every compiled node (-1 for the finished nodes)
+		int[] frontierIndex = new int[nodes.size()];
+		for (int n = 0; n < frontierIndex.length; n++) {
+			Integer index = frontierIndexes.get(nodes.get(n));
+			frontierIndex[n] = index == null ? -1 : index;
+		}
+
+		NodeStatistics[] statistics = new NodeStatistics[frontier.size()];
+		for (int i = 0; i < statistics.length; i++) {
+			statistics[i] = NodeStatistics.empty(shape);
+		}
+		long start = tree.metrics == null ? 0 : System.nanoTime();
+		long numOfRows = 0;
+		try (RowReader reader = openRows()) {
+			int[] valueIndexes = new int[shape.numAttributes];
+			while (reader.next(valueIndexes)) {
+				int index = frontierIndex[routing.classifyingNode(valueIndexes)];
+				if (index != -1) {
+					statistics[index].add(valueIndexes, 1);
+				}
+				numOfRows++;
+			}
+		}
+		if (tree.metrics != null) {
+			tree.metrics.phase(TreeMetricsListener.Phase.COUNTING, numOfRows, System.nanoTime() - start);
+		}
+		return statistics;
+	}
+
+	// opens the rows for a pass: the spill file if it was written, the ARFF file otherwise
+	private RowReader openRows() throws IOException {
+		if (spillFile != null) {
+			return new SpillReader(spillFile);
+		}
+		ArffRowReader reader = new ArffRowReader(arffFile);
+		if (spillToDisk) {
+			spillFile = Files.createTempFile("decision-tree-rows", ".bin");
+			reader.spill(new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spillFile), 1 << 16)));
+		}
+		return reader;
+	}
+
+	// reads the rows of a pass as value indexes
+	private interface RowReader extends Closeable {
+		// reads the value indexes of the next row, returns false at the end of the rows
+		boolean next(int[] valueIndexes) throws IOException;
+	}
+
+	// writes the value index of an attribute in a byte if the values fit in a byte, and in a short otherwise
+	private boolean isByteAttribute(int attributeIndex) {
+		return shape.numValues[attributeIndex] <= Byte.MAX_VALUE;
+	}
+
+	private class ArffRowReader implements RowReader {
+		private final BufferedReader input;
+		private final ArffLoader.ArffReader arff;
+		private final Instances structure;
+		private DataOutputStream spill;
+
+		ArffRowReader(Path path) throws IOException {
+			input = Files.newBufferedReader(path);
+			// reads only the header, the rows are read one by one
+			arff = new ArffLoader.ArffReader(input, 1);
+			structure = arff.getStructure();
+			structure.setClassIndex(structure.numAttributes() - 1);
+		}
+
+		// writes every row that is read to the given stream
+		void spill(DataOutputStream out) {
+			spill = out;
+		}
+
+		@Override
+		public boolean next(int[] valueIndexes) throws IOException {
+			Instance currentInstance = arff.readInstance(structure);
+			if (currentInstance == null) {
+				return false;
+			}
+			if (currentInstance.weight() != 1) {
+				throw new IllegalArgumentException("A streamed build doesn't support instance weights");
+			}
+			for (int a = 0; a < valueIndexes.length; a++) {
+				if (currentInstance.isMissing(a)) {
+					throw new IllegalArgumentException("Missing value in attribute " + a);
+				}
+				// the value of a nominal attribute is the index of the value
+				valueIndexes[a] = (int) currentInstance.value(a);
+				if (spill != null) {
+					if (isByteAttribute(a)) {
+						spill.writeByte(valueIndexes[a]);
+					}
+					else {
+						spill.writeShort(valueIndexes[a]);
+					}
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+			if (spill != null) {
+				spill.close();
+			}
+		}
+	}
+
+	private class SpillReader implements RowReader {
+		private final DataInputStream input;
+
+		SpillReader(Path path) throws IOException {
+			input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16));
+		}
+
+		@Override
+		public boolean next(int[] valueIndexes) throws IOException {
+			try {
+				valueIndexes[0] = isByteAttribute(0) ? input.readByte() : input.readShort();
+			}
+			catch (EOFException e) {
+				return false;
+			}
+			for (int a = 1; a < valueIndexes.length; a++) {
+				valueIndexes[a] = isByteAttribute(a) ? input.readByte() : input.readShort();
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			input.close();
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package HomeWork2;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates nominal data sets for benchmarks. The class depends on the first few attributes,
+ * with some noise, so the built trees have a realistic shape.
+ */
+class SyntheticData {
+	// the number of attributes that determine the class
+	private static final int INFORMATIVE_ATTRIBUTES = 3;
+	// the fraction of instances whose class is random
+	private static final double NOISE = 0.1;
+
+	private SyntheticData() {
+	}
+
+	/**
+	 * Generates a data set with a nominal class as the last attribute.
+	 *
+	 * @param numRows the number of instances
+	 * @param numAttributes the number of attributes, without the class
+	 * @param arity the number of values of every attribute
+	 * @param classBalance the fraction of instances of class 0
+	 * @param seed the seed of the random values
+	 * @return the generated instances
+	 */
+	static Instances generate(int numRows, int numAttributes, int arity, double classBalance, long seed) {
+		Random random = new Random(seed);
+		ArrayList<Attribute> attributes = new ArrayList<Attribute>(numAttributes + 1);
+		List<String> values = new ArrayList<String>(arity);
+		for (int v = 0; v < arity; v++) {
+			values.add("v" + v);
+		}
+		for (int a = 0; a < numAttributes; a++) {
+			attributes.add(new Attribute("a" + a, values));
+		}
+		List<String> classes = new ArrayList<String>(2);
+		classes.add("c0");
+		classes.add("c1");
+		attributes.add(new Attribute("class", classes));
+
+		Instances data = new Instances("synthetic", attributes, numRows);
+		data.setClassIndex(numAttributes);
+
+		for (int i = 0; i < numRows; i++) {
+			double[] instanceValues = new double[numAttributes + 1];
+			long hash = 17;
+			for (int a = 0; a < numAttributes; a++) {
+				instanceValues[a] = random.nextInt(arity);
+				if (a < INFORMATIVE_ATTRIBUTES) {
+					hash = hash * 31 + (long) instanceValues[a];
+				}
+			}
+			// maps the informative values to [0, 1), and keeps the requested fraction of class 0
+			double position = (hash * 0x9E3779B97F4A7C15L >>> 11) * 0x1.0p-53;
+			if (random.nextDouble() < NOISE) {
+				position = random.nextDouble();
+			}
+			instanceValues[numAttributes] = position < classBalance ? 0 : 1;
+			data.add(new DenseInstance(1, instanceValues));
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,56 @@
+package HomeWork2;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.core.Instances;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks building a tree, for both impurity measures and every p-value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TrainingBenchmark {
+	@Param({"100000"})
+	public int rows;
+	@Param({"50"})
+	public int attributes;
+	@Param({"4"})
+	public int arity;
+	@Param({"0.5"})
+	public double classBalance;
+	@Param({"true", "false"})
+	public boolean gini;
+	@Param({"0", "1", "2", "3", "4", "5"})
+	public int pValueIndex;
+
+	private Instances data;
+
+	@Setup
+	public void generate() {
+		data = SyntheticData.generate(rows, attributes, arity, classBalance, 1);
+	}
+
+	@Benchmark
+	public DecisionTree buildClassifier() throws Exception {
+		DecisionTree tree = new DecisionTree();
+		tree.isGini = gini;
+		tree.pValueIndex = pValueIndex;
+		tree.buildClassifier(data);
+		return tree;
+	}
+}
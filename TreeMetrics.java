@@ -0,0 +1,188 @@
+package HomeWork2;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the metrics of building and scoring trees, for any number of trees and threads.
+ * The metrics can be read directly, or through JMX after {@link #register(String)}.
+ */
+public class TreeMetrics implements TreeMetricsListener, TreeMetricsMBean {
+	// the depths that are counted separately, deeper nodes are counted with the deepest
+	private static final int MAX_DEPTH = 64;
+	// the number of latency buckets, one for every power of 2 of nanoseconds
+	private static final int LATENCY_BUCKETS = 64;
+
+	private final LongAdder nodesCreated = new LongAdder();
+	// the number of rows and the time of every phase
+	private final LongAdder[] phaseRows = newAdders(Phase.values().length);
+	private final LongAdder[] phaseNanos = newAdders(Phase.values().length);
+	private final AtomicLongArray branchesPruned = new AtomicLongArray(ModelSelection.P_VALUES.length + 1);
+	private final AtomicLongArray nodesPerDepth = new AtomicLongArray(MAX_DEPTH);
+	private final LongAdder scoredRows = new LongAdder();
+	private final LongAdder unseenValueFallbacks = new LongAdder();
+	private final AtomicLongArray scoringLatency = new AtomicLongArray(LATENCY_BUCKETS);
+	private final LongAdder predictionCacheHits = new LongAdder();
+	private final LongAdder predictionCacheMisses = new LongAdder();
+
+	private static LongAdder[] newAdders(int length) {
+		LongAdder[] adders = new LongAdder[length];
+		for (int i = 0; i < length; i++) {
+			adders[i] = new LongAdder();
+		}
+		return adders;
+	}
+
+	/**
+	 * Registers the metrics in the platform MBean server.
+	 *
+	 * @param name the name of the metrics, for example "trees:type=TreeMetrics,name=cancer"
+	 * @return the object name of the registered MBean
+	 * @throws JMException if the name is invalid or already registered
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName(name);
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public void nodeCreated(int depth) {
+		nodesCreated.increment();
+		nodesPerDepth.incrementAndGet(Math.min(depth, MAX_DEPTH - 1));
+	}
+
+	@Override
+	public void phase(Phase phase, long rows, long nanos) {
+		phaseRows[phase.ordinal()].add(rows);
+		phaseNanos[phase.ordinal()].add(nanos);
+	}
+
+	@Override
+	public void branchPruned(double pValue) {
+		// the p-values that aren't standard are counted in the last entry
+		int index = ModelSelection.P_VALUES.length;
+		for (int p = 0; p < ModelSelection.P_VALUES.length; p++) {
+			if (ModelSelection.P_VALUES[p] == pValue) {
+				index = p;
+			}
+		}
+		branchesPruned.incrementAndGet(index);
+	}
+
+	@Override
+	public void scored(int rows, int unseenValues, long nanos) {
+		scoredRows.add(rows);
+		unseenValueFallbacks.add(unseenValues);
+		// the bucket of the highest bit of the latency
+		scoringLatency.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(1, nanos)));
+	}
+
+	@Override
+	public void predictionCacheLookup(boolean isHit) {
+		(isHit ? predictionCacheHits : predictionCacheMisses).increment();
+	}
+
+	@Override
+	public long getNodesCreated() {
+		return nodesCreated.sum();
+	}
+
+	@Override
+	public long getRowsCounted() {
+		return phaseRows[Phase.COUNTING.ordinal()].sum();
+	}
+
+	@Override
+	public long getRowsPartitioned() {
+		return phaseRows[Phase.PARTITIONING.ordinal()].sum();
+	}
+
+	@Override
+	public long getCountingNanos() {
+		return phaseNanos[Phase.COUNTING.ordinal()].sum();
+	}
+
+	@Override
+	public long getSplitSearchNanos() {
+		return phaseNanos[Phase.SPLIT_SEARCH.ordinal()].sum();
+	}
+
+	@Override
+	public long getPartitioningNanos() {
+		return phaseNanos[Phase.PARTITIONING.ordinal()].sum();
+	}
+
+	@Override
+	public long getPruningNanos() {
+		return phaseNanos[Phase.PRUNING.ordinal()].sum();
+	}
+
+	@Override
+	public long[] getBranchesPruned() {
+		return toArray(branchesPruned);
+	}
+
+	@Override
+	public long[] getNodesPerDepth() {
+		return toArray(nodesPerDepth);
+	}
+
+	@Override
+	public long getScoredRows() {
+		return scoredRows.sum();
+	}
+
+	@Override
+	public long getUnseenValueFallbacks() {
+		return unseenValueFallbacks.sum();
+	}
+
+	@Override
+	public long[] getScoringLatencyHistogram() {
+		return toArray(scoringLatency);
+	}
+
+	@Override
+	public long getPredictionCacheHits() {
+		return predictionCacheHits.sum();
+	}
+
+	@Override
+	public long getPredictionCacheMisses() {
+		return predictionCacheMisses.sum();
+	}
+
+	@Override
+	public void reset() {
+		nodesCreated.reset();
+		for (int p = 0; p < phaseRows.length; p++) {
+			phaseRows[p].reset();
+			phaseNanos[p].reset();
+		}
+		scoredRows.reset();
+		unseenValueFallbacks.reset();
+		predictionCacheHits.reset();
+		predictionCacheMisses.reset();
+		clear(branchesPruned);
+		clear(nodesPerDepth);
+		clear(scoringLatency);
+	}
+
+	private static long[] toArray(AtomicLongArray counters) {
+		long[] values = new long[counters.length()];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = counters.get(i);
+		}
+		return values;
+	}
+
+	private static void clear(AtomicLongArray counters) {
+		for (int i = 0; i < counters.length(); i++) {
+			counters.set(i, 0);
+		}
+	}
+}
@@ -0,0 +1,71 @@
+package HomeWork2;
+
+/**
+ * Receives the events of building and scoring a decision tree. A tree without a listener doesn't
+ * measure anything, so the instrumentation costs nothing when it is disabled.
+ * The methods can be called from several threads at the same time (by a parallel build, or by
+ * concurrent scoring), so an implementation must be thread safe. All the methods do nothing by default.
+ *
+ * @see TreeMetrics
+ */
+public interface TreeMetricsListener {
+
+	/**
+	 * The phases of building a tree.
+	 */
+	enum Phase {
+		// scanning the rows of a node into its statistics
+		COUNTING,
+		// evaluating the candidate splits from the statistics
+		SPLIT_SEARCH,
+		// moving the rows of a split node to the ranges of its children
+		PARTITIONING,
+		// the chi-square test of a split
+		PRUNING
+	}
+
+	/**
+	 * A node was created.
+	 *
+	 * @param depth the depth of the node (the root depth is 0)
+	 */
+	default void nodeCreated(int depth) {
+	}
+
+	/**
+	 * A phase of the build finished for a node.
+	 *
+	 * @param phase the phase
+	 * @param rows the number of rows that the phase scanned
+	 * @param nanos the time of the phase
+	 */
+	default void phase(Phase phase, long rows, long nanos) {
+	}
+
+	/**
+	 * The chi-square test turned a node into a leaf.
+	 *
+	 * @param pValue the p-value of the test
+	 */
+	default void branchPruned(double pValue) {
+	}
+
+	/**
+	 * Instances were classified.
+	 *
+	 * @param rows the number of classified instances
+	 * @param unseenValues the number of instances that were classified by an inner node,
+	 *                     since their value of its attribute wasn't in the training data (or was missing)
+	 * @param nanos the time of the classification
+	 */
+	default void scored(int rows, int unseenValues, long nanos) {
+	}
+
+	/**
+	 * An instance was looked up in the prediction cache of a tree.
+	 *
+	 * @param isHit true if its classifying node was in the cache, false if the tree was traversed
+	 */
+	default void predictionCacheLookup(boolean isHit) {
+	}
+}
@@ -0,0 +1,50 @@
+package HomeWork2;
+
+/**
+ * The JMX view of {@link TreeMetrics}. The times are in nanoseconds.
+ */
+public interface TreeMetricsMBean {
+
+	long getNodesCreated();
+
+	long getRowsCounted();
+
+	long getRowsPartitioned();
+
+	long getCountingNanos();
+
+	long getSplitSearchNanos();
+
+	long getPartitioningNanos();
+
+	long getPruningNanos();
+
+	/**
+	 * @return the number of pruned branches of every p-value of {@link ModelSelection#P_VALUES},
+	 * and of all the other p-values in the last entry
+	 */
+	long[] getBranchesPruned();
+
+	/**
+	 * @return the number of created nodes of every depth (the last entry counts all the deeper nodes too)
+	 */
+	long[] getNodesPerDepth();
+
+	long getScoredRows();
+
+	long getUnseenValueFallbacks();
+
+	/**
+	 * @return the number of scoring calls that took [2^b, 2^(b + 1)) nanoseconds at entry b
+	 */
+	long[] getScoringLatencyHistogram();
+
+	long getPredictionCacheHits();
+
+	long getPredictionCacheMisses();
+
+	/**
+	 * Sets all the metrics to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,257 @@
+package HomeWork2;
+
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the trees of two-class data are the trees of the original binary implementation.
+ * Builds trees of small random nominal data sets, where equal gains and chi-square values near the critical
+ * values are common, with both impurity measures and all the p-value indexes, and compares every tree node
+ * by node with the tree of the original build: the binary Gini, entropy and chi-square of the probability of
+ * the first class, a tie of the gains to the first attribute, and the original majority rules.
+ * Exits with status 1 if a tree differs.
+ */
+public class TwoClassTreeCheck {
+
+	private TwoClassTreeCheck() {
+	}
+
+	/**
+	 * Runs the check.
+	 *
+	 * @param args optional: the number of random data sets
+	 * @throws Exception if a tree can't be built
+	 */
+	public static void main(String[] args) throws Exception {
+		int numOfDataSets = args.length > 0 ? Integer.parseInt(args[0]) : 3000;
+		int numOfTrees = 0;
+		int numOfMismatches = 0;
+
+		for (long seed = 1; seed <= numOfDataSets; seed++) {
+			Random random = new Random(seed);
+			int numAttributes = 3 + random.nextInt(6);
+			int numOfRows = 10 + random.nextInt(60);
+			int[] numValues = new int[numAttributes];
+			ArrayList<Attribute> attributes = new ArrayList<Attribute>();
+			for (int a = 0; a < numAttributes; a++) {
+				numValues[a] = 2 + random.nextInt(2);
+				List<String> values = new ArrayList<String>();
+				for (int v = 0; v < numValues[a]; v++) {
+					values.add("v" + v);
+				}
+				attributes.add(new Attribute("a" + a, values));
+			}
+			attributes.add(new Attribute("class", Arrays.asList("recurrence-events", "no-recurrence-events")));
+			Instances data = new Instances("random", attributes, numOfRows);
+			data.setClassIndex(numAttributes);
+
+			// the value of every row at values[row][attribute], and the class at values[row][numAttributes]
+			int[][] values = new int[numOfRows][numAttributes + 1];
+			for (int i = 0; i < numOfRows; i++) {
+				double[] instanceValues = new double[numAttributes + 1];
+				for (int a = 0; a <= numAttributes; a++) {
+					values[i][a] = random.nextInt(a == numAttributes ? 2 : numValues[a]);
+					instanceValues[a] = values[i][a];
+				}
+				data.add(new DenseInstance(1, instanceValues));
+			}
+			int[] allRows = new int[numOfRows];
+			for (int i = 0; i < numOfRows; i++) {
+				allRows[i] = i;
+			}
+
+			for (boolean isGini : new boolean[] {false, true}) {
+				for (int p = 0; p < ChiSquareCriticalValues.P_VALUES.length; p++) {
+					DecisionTree tree = new DecisionTree();
+					tree.isGini = isGini;
+					tree.pValueIndex = p;
+					tree.buildClassifier(data);
+					numOfTrees++;
+					Reference reference = new Reference(values, numValues, isGini, p);
+					if (!reference.matches(tree.getCompiledTree(), 0, allRows)) {
+						numOfMismatches++;
+						System.out.println("seed " + seed + ", " + (isGini ? "Gini" : "entropy") + ", p-value index " + p
+								+ ": the tree differs from the original tree");
+					}
+				}
+			}
+		}
+		System.out.println(numOfTrees + " trees, " + numOfMismatches + " differ from the original trees");
+		if (numOfMismatches > 0) {
+			System.exit(1);
+		}
+	}
+
+	// the original build of two-class nominal data, in its original arithmetic
+	private static final class Reference {
+		private final int[][] values;
+		private final int[] numValues;
+		private final int classIndex;
+		private final boolean isGini;
+		private final int pValueIndex;
+
+		Reference(int[][] values, int[] numValues, boolean isGini, int pValueIndex) {
+			this.values = values;
+			this.numValues = numValues;
+			this.classIndex = numValues.length;
+			this.isGini = isGini;
+			this.pValueIndex = pValueIndex;
+		}
+
+		// returns true if node n of the compiled tree is the original node of the given rows
+		boolean matches(CompiledTree tree, int node, int[] rows) {
+			int numOfRecurrence = 0;
+			for (int row : rows) {
+				if (values[row][classIndex] == 0) {
+					numOfRecurrence++;
+				}
+			}
+			// a perfectly classified node is a leaf of its class
+			if (numOfRecurrence == 0 || numOfRecurrence == rows.length) {
+				return isLeaf(tree, node, values[rows[0]][classIndex]);
+			}
+			// a node without gain is a leaf of the majority (a tie goes to the second class)
+			int bestAttribute = bestAttribute(rows);
+			if (bestAttribute == -1) {
+				return isLeaf(tree, node, numOfRecurrence > rows.length - numOfRecurrence ? 0 : 1);
+			}
+			// a split node returns the majority (a tie goes to the first class), also when it is pruned
+			int returnValue = numOfRecurrence >= rows.length - numOfRecurrence ? 0 : 1;
+			int[][] childrenRows = childrenRows(rows, bestAttribute);
+			int numOfRelevantValues = 0;
+			for (int[] childRows : childrenRows) {
+				if (childRows.length != 0) {
+					numOfRelevantValues++;
+				}
+			}
+			if (pValueIndex != 0 && chiSquare(rows, bestAttribute) < ChiSquareCriticalValues.of(
+					ChiSquareCriticalValues.P_VALUES[pValueIndex]).criticalValue(numOfRelevantValues - 1)) {
+				return isLeaf(tree, node, returnValue);
+			}
+
+			if (tree.attribute[node] != bestAttribute || tree.leafValue[node] != returnValue) {
+				return false;
+			}
+			for (int v = 0; v < childrenRows.length; v++) {
+				int child = tree.children[tree.childOffset[node] + v];
+				if (childrenRows[v].length == 0 ? child != CompiledTree.NONE
+						: child == CompiledTree.NONE || !matches(tree, child, childrenRows[v])) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static boolean isLeaf(CompiledTree tree, int node, int returnValue) {
+			return tree.attribute[node] == CompiledTree.NONE && tree.leafValue[node] == returnValue;
+		}
+
+		// returns the attribute with the largest gain (a tie goes to the first attribute), -1 if no attribute has gain
+		private int bestAttribute(int[] rows) {
+			int bestAttributeIndex = 0;
+			double maxGain = gain(rows, 0);
+			for (int a = 1; a < numValues.length; a++) {
+				double currentGain = gain(rows, a);
+				if (currentGain > maxGain) {
+					maxGain = currentGain;
+					bestAttributeIndex = a;
+				}
+			}
+			return maxGain == 0 ? -1 : bestAttributeIndex;
+		}
+
+		private double gain(int[] rows, int attributeIndex) {
+			double[] attributesDistribution = new double[numValues[attributeIndex]];
+			double[] kidsRecurrenceProb = new double[numValues[attributeIndex]];
+			double recurrenceFather = probabilities(rows, attributeIndex, attributesDistribution, kidsRecurrenceProb);
+			double sum = 0;
+			if (isGini) {
+				for (int i = 0; i < attributesDistribution.length; i++) {
+					sum += attributesDistribution[i] * gini(kidsRecurrenceProb[i]);
+				}
+				return gini(recurrenceFather) - sum;
+			}
+			for (int i = 0; i < attributesDistribution.length; i++) {
+				if (kidsRecurrenceProb[i] != 0 && kidsRecurrenceProb[i] != 1) {
+					sum += attributesDistribution[i] * entropy(kidsRecurrenceProb[i]);
+				}
+			}
+			return entropy(recurrenceFather) - sum;
+		}
+
+		private static double gini(double probabilitySick) {
+			double sum = Math.pow(probabilitySick, 2) + Math.pow(1 - probabilitySick, 2);
+			return 1 - sum;
+		}
+
+		private static double entropy(double probabilitySick) {
+			double sum = probabilitySick * Math.log(probabilitySick) + (1 - probabilitySick) * Math.log(1 - probabilitySick);
+			return sum * (-1);
+		}
+
+		private double chiSquare(int[] rows, int attributeIndex) {
+			double[] attributesDistribution = new double[numValues[attributeIndex]];
+			double[] kidsRecurrenceProb = new double[numValues[attributeIndex]];
+			double probRecurrence = probabilities(rows, attributeIndex, attributesDistribution, kidsRecurrenceProb);
+			double chiSquare = 0;
+			for (int i = 0; i < attributesDistribution.length; i++) {
+				if (attributesDistribution[i] != 0) {
+					double Df = attributesDistribution[i] * rows.length;
+					double pf = kidsRecurrenceProb[i] * Df;
+					double nf = (1 - kidsRecurrenceProb[i]) * Df;
+					double E0 = Df * probRecurrence;
+					double E1 = Df * (1 - probRecurrence);
+					chiSquare += (Math.pow((pf - E0), 2) / E0) + (Math.pow((nf - E1), 2) / E1);
+				}
+			}
+			return chiSquare;
+		}
+
+		// fills the probability of every value and the probability of the first class in every value,
+		// returns the probability of the first class
+		private double probabilities(int[] rows, int attributeIndex, double[] attributesDistribution,
+									 double[] kidsRecurrenceProb) {
+			double recurrenceFather = 0;
+			for (int row : rows) {
+				int value = values[row][attributeIndex];
+				attributesDistribution[value]++;
+				if (values[row][classIndex] == 0) {
+					recurrenceFather++;
+					kidsRecurrenceProb[value]++;
+				}
+			}
+			recurrenceFather = recurrenceFather / rows.length;
+			for (int i = 0; i < attributesDistribution.length; i++) {
+				if (attributesDistribution[i] != 0) {
+					kidsRecurrenceProb[i] = kidsRecurrenceProb[i] / attributesDistribution[i];
+					attributesDistribution[i] = attributesDistribution[i] / rows.length;
+				}
+			}
+			return recurrenceFather;
+		}
+
+		// returns the rows of every value of the attribute, in their order
+		private int[][] childrenRows(int[] rows, int attributeIndex) {
+			int[] sizes = new int[numValues[attributeIndex]];
+			for (int row : rows) {
+				sizes[values[row][attributeIndex]]++;
+			}
+			int[][] childrenRows = new int[sizes.length][];
+			for (int v = 0; v < sizes.length; v++) {
+				childrenRows[v] = new int[sizes[v]];
+				sizes[v] = 0;
+			}
+			for (int row : rows) {
+				int value = values[row][attributeIndex];
+				childrenRows[value][sizes[value]++] = row;
+			}
+			return childrenRows;
+		}
+	}
+}